@@ -0,0 +1,337 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.Server;
+import org.ce.ap.server.managers.TweetManager;
+import org.ce.ap.server.managers.UserManager;
+import org.ce.ap.server.model.user.ToHexString;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * The type Benchmark data.
+ * makes a synthetic data set once for every size and gives each benchmark fork its own copy,
+ * the server reads the copy through -Dserver.config so it must be installed before any
+ * server class is loaded
+ */
+public class BenchmarkData {
+    /**
+     * The number of users.
+     */
+    public static final int USERS = 1000;
+    /**
+     * The number of users every user follows.
+     */
+    public static final int FOLLOWINGS = 50;
+    /**
+     * The password of every user.
+     */
+    public static final String PASSWORD = "password";
+    private static final Path ROOT = Path.of(System.getProperty("java.io.tmpdir"), "twitter-benchmarks");
+    private static final LocalDateTime FIRST_TWEET = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static Path work;
+
+    /**
+     * point the server to a fresh copy of the data set
+     *
+     * @param tweetCount the number of tweets
+     * @throws IOException the io exception
+     */
+    public static synchronized void install(int tweetCount) throws IOException {
+        install(tweetCount, false);
+    }
+
+    /**
+     * point the server to a fresh copy of the data set
+     *
+     * @param tweetCount the number of tweets
+     * @param snapshot   whether the copy has the snapshots of the users and the tweet index
+     * @throws IOException the io exception
+     */
+    public static synchronized void install(int tweetCount, boolean snapshot) throws IOException {
+        install(tweetCount, snapshot, "log");
+    }
+
+    /**
+     * point the server to a fresh copy of the data set
+     *
+     * @param tweetCount the number of tweets
+     * @param snapshot   whether the copy has the snapshots of the users and the tweet index
+     * @param storage    the server.tweets.storage, the mapped files are imported from the log at start
+     * @throws IOException the io exception
+     */
+    public static synchronized void install(int tweetCount, boolean snapshot, String storage) throws IOException {
+        if (work != null)
+            return;
+        Path template = ROOT.resolve("template-" + tweetCount);
+        if (!Files.exists(template.resolve("ready")))
+            generate(template, tweetCount);
+        if (snapshot && !Files.exists(template.resolve("snapshot")))
+            generateSnapshot(template);
+        work = Files.createTempDirectory(ROOT, "run-");
+        copy(template.resolve("users"), work.resolve("users"));
+        copy(template.resolve("tweets"), work.resolve("tweets"));
+        if (snapshot)
+            copy(template.resolve("snapshot"), work.resolve("snapshot"));
+        System.setProperty("server.config", writeConfig(work, storage, "benchmark data set of " + tweetCount + " tweets").toString());
+    }
+
+    /**
+     * run a server on the installed data set in another process, it uses the java of this one
+     *
+     * @param port     the port
+     * @param settings the settings that differ from the data set's configuration
+     * @return the server process, it accepts clients when this returns
+     * @throws IOException the io exception
+     */
+    public static synchronized Process startServer(int port, Map<String, String> settings) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(Path.of(System.getProperty("server.config")))) {
+            properties.load(in);
+        }
+        properties.setProperty("server.port", String.valueOf(port));
+        properties.putAll(settings);
+        Path config = work.resolve("server.properties");
+        try (OutputStream out = Files.newOutputStream(config)) {
+            properties.store(out, "benchmark server on port " + port);
+        }
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xms1g", "-Xmx2g", "-cp", System.getProperty("java.class.path"),
+                "-Dserver.config=" + config, Server.class.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(work.resolve("server.out").toFile())
+                .start();
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (true) {
+            try (Socket ignored = new Socket("127.0.0.1", port)) {
+                return process;
+            } catch (IOException e) {
+                if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                    process.destroy();
+                    throw new IOException("the server did not start, see " + work.resolve("server.out"), e);
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                process.destroy();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * remove the copy of the data set
+     */
+    public static synchronized void uninstall() {
+        if (work == null)
+            return;
+        try {
+            delete(work);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        work = null;
+    }
+
+    /**
+     * Username string.
+     *
+     * @param index the index of the user
+     * @return the username
+     */
+    public static String username(int index) {
+        return "user" + Math.floorMod(index, USERS);
+    }
+
+    /**
+     * Send date local date time.
+     *
+     * @param index the index of the tweet, from 1
+     * @return the send date of the tweet
+     */
+    public static LocalDateTime sendDate(int index) {
+        return FIRST_TWEET.plusSeconds(index);
+    }
+
+    /**
+     * the users follow the next FOLLOWINGS users and the tweets are written as one log segment
+     * with one second between them, the authors take turns
+     */
+    private static void generate(Path template, int tweetCount) throws IOException {
+        System.out.println("generating a data set of " + tweetCount + " tweets in " + template);
+        Path temporary = Files.createDirectories(ROOT).resolve(template.getFileName() + ".tmp");
+        if (Files.exists(temporary))
+            delete(temporary);
+        Path users = Files.createDirectories(temporary.resolve("users"));
+        Path tweets = Files.createDirectories(temporary.resolve("tweets"));
+        String password = hash(PASSWORD);
+        for (int i = 0; i < USERS; i++) {
+            JSONArray followings = new JSONArray();
+            for (int j = 1; j <= FOLLOWINGS; j++) {
+                followings.put(username(i + j));
+            }
+            JSONObject user = new JSONObject();
+            user.put("firstName", "Bench");
+            user.put("lastName", "User");
+            user.put("username", username(i));
+            user.put("password", password);
+            user.put("birthDate", LocalDate.of(2000, 1, 1).toString());
+            user.put("registryDate", LocalDate.of(2020, 1, 1).toString());
+            user.put("biography", "");
+            user.put("followings", followings);
+            user.put("followers", new JSONArray());
+            Path file = Files.write(users.resolve(username(i)), user.toString().getBytes(StandardCharsets.UTF_8));
+            //// older than any snapshot, so the snapshot is not ignored for these users
+            Files.setLastModifiedTime(file, FileTime.from(FIRST_TWEET.toInstant(ZoneOffset.UTC)));
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(tweets.resolve("segment-1.log"), StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= tweetCount; i++) {
+                JSONObject tweet = new JSONObject();
+                tweet.put("id", i);
+                tweet.put("author", username(i));
+                tweet.put("text", "synthetic tweet number " + i);
+                tweet.put("likes", new JSONArray());
+                tweet.put("replies", new JSONArray());
+                tweet.put("sendDate", sendDate(i).toString());
+                tweet.put("retweets", new JSONArray());
+                JSONObject record = new JSONObject();
+                record.put("op", "PUT");
+                record.put("id", i);
+                record.put("tweet", tweet);
+                out.write(record.toString());
+                out.write("\n");
+            }
+        }
+        Files.createFile(temporary.resolve("ready"));
+        Files.move(temporary, template, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * boot a server on the template in another process and keep the snapshots it writes,
+     * the server's singletons could not be booted again in this process
+     */
+    private static void generateSnapshot(Path template) throws IOException {
+        System.out.println("writing the snapshots of " + template);
+        Path config = writeConfig(template, "log", "snapshot of the benchmark data set");
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dserver.config=" + config, BenchmarkData.class.getName())
+                .inheritIO()
+                .start();
+        try {
+            if (process.waitFor() != 0)
+                throw new IOException("writing the snapshots failed");
+        } catch (InterruptedException e) {
+            process.destroy();
+            throw new IOException(e);
+        }
+        delete(template.resolve("log"));
+        Files.delete(config);
+    }
+
+    /**
+     * write the snapshots of the data set that server.config points to
+     *
+     * @param args the args
+     */
+    public static void main(String[] args) {
+        UserManager.getInstance();
+        TweetManager.getInstance();
+        Server.writeSnapshots();
+    }
+
+    /**
+     * the configuration of a server whose files are in the directory
+     */
+    private static Path writeConfig(Path directory, String storage, String comment) throws IOException {
+        Properties properties = defaults();
+        properties.setProperty("server.users.file", directory.resolve("users").toString());
+        properties.setProperty("server.tweets.file", directory.resolve("tweets").toString());
+        properties.setProperty("server.tweets.storage", storage);
+        properties.setProperty("server.log.file", directory.resolve("log").toString());
+        properties.setProperty("server.snapshot.file", directory.resolve("snapshot").toString());
+        Path config = directory.resolve("server-application.properties");
+        try (OutputStream out = Files.newOutputStream(config)) {
+            properties.store(out, comment);
+        }
+        return config.toAbsolutePath();
+    }
+
+    /**
+     * point the server to the project's configuration, for the benchmarks that need no data set
+     *
+     * @throws IOException the io exception
+     */
+    public static synchronized void useDefaultConfig() throws IOException {
+        if (work == null && System.getProperty("server.config") == null)
+            System.setProperty("server.config", defaultsPath().toAbsolutePath().toString());
+    }
+
+    /**
+     * the settings that are not about files come from the project's configuration
+     */
+    private static Properties defaults() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(defaultsPath())) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static Path defaultsPath() throws IOException {
+        String[] candidates = {System.getProperty("server.defaults", ""),
+                "../src/main/resources/server-application.properties",
+                "src/main/resources/server-application.properties"};
+        for (String candidate : candidates) {
+            if (!candidate.isEmpty() && Files.isRegularFile(Path.of(candidate)))
+                return Path.of(candidate);
+        }
+        throw new IOException("server-application.properties not found, run in the project or pass -Dserver.defaults=<file>");
+    }
+
+    private static String hash(String password) {
+        try {
+            return ToHexString.toHexString(ToHexString.getSHA(password));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory))
+            return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.ce.ap.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The type Benchmark runner.
+ * the JMH main with the gc profiler added, so the allocation rate per operation is reported
+ * with the throughput of every benchmark
+ */
+public class BenchmarkRunner {
+    /**
+     * The entry point of the benchmarks.
+     *
+     * @param args the usual JMH options, for example a benchmark name pattern or -p tweets=10000
+     * @throws Exception the exception
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.protocol.MessageDeflater;
+import org.ce.ap.server.middleClasses.ServerProcessor;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Compression benchmark.
+ * the cpu time to deflate a timeline page of a client that scrolls through its timeline and starts
+ * again, with the stream of its connection as the dictionary or with a new deflater for every page.
+ * the compression ratio is printed at the end of the trial
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    private static final int PAGES = 8;
+    @Param({"1", "6", "9"})
+    public int level;
+    @Param({"connection", "message"})
+    public String history;
+    private final ArrayList<byte[]> pages = new ArrayList<>();
+    private MessageDeflater deflater;
+    private int nextPage;
+    private long rawBytes;
+    private long compressedBytes;
+
+    /**
+     * sign in and take the first pages of the timeline as the server writes them
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.install(10000);
+        ServerProcessor serverProcessor = new ServerProcessor();
+        JSONObject parameters = new JSONObject();
+        parameters.put("username", BenchmarkData.username(0));
+        parameters.put("password", BenchmarkData.PASSWORD);
+        serverProcessor.processRequest(request("SIGNIN", parameters));
+        JsonOutput output = new JsonOutput();
+        Object cursor = null;
+        for (int i = 0; i < PAGES; i++) {
+            parameters = new JSONObject();
+            parameters.putOpt("cursor", cursor);
+            JSONObject page = serverProcessor.processRequest(request("TIMELINE", parameters));
+            output.writeResponse(page);
+            pages.add(Arrays.copyOf(output.array(), output.size()));
+            cursor = page.opt("nextCursor");
+        }
+        serverProcessor.close();
+        deflater = new MessageDeflater(level, 0);
+    }
+
+    /**
+     * print the ratio and tear down
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deflater.end();
+        System.out.println();
+        System.out.printf("level %d, %s history : %d pages, ratio %.2f%n", level, history,
+                pages.size(), (double) rawBytes / compressedBytes);
+        BenchmarkData.uninstall();
+    }
+
+    private static JSONObject request(String method, JSONObject parameters) {
+        JSONObject request = new JSONObject();
+        request.put("method", method);
+        request.put("parameterValues", parameters);
+        return request;
+    }
+
+    /**
+     * deflate the next page
+     *
+     * @return the compressed size
+     */
+    @Benchmark
+    public int deflatePage() {
+        byte[] page = pages.get(nextPage);
+        nextPage = (nextPage + 1) % pages.size();
+        int size;
+        if ("connection".equals(history)) {
+            deflater.deflate(page, 0, page.length);
+            size = deflater.size();
+        } else {
+            MessageDeflater fresh = new MessageDeflater(level, 0);
+            fresh.deflate(page, 0, page.length);
+            size = fresh.size();
+            fresh.end();
+        }
+        rawBytes += page.length;
+        compressedBytes += size;
+        return size;
+    }
+}
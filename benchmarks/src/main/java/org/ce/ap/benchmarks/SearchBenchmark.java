@@ -0,0 +1,59 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.managers.TweetManager;
+import org.ce.ap.server.model.tweet.Tweet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Search benchmark.
+ * a page of the newest tweets that have the words of a query. every tweet of the data set has the
+ * words "synthetic tweet number" and its number, so "tweet" walks one long list, "synthetic tweet"
+ * intersects two of them and "number 4242" finds the one tweet of a short list in a long one
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int tweets;
+    @Param({"tweet", "synthetic tweet", "number 4242"})
+    public String query;
+    @Param({"50"})
+    public int pageSize;
+    private TweetManager tweetManager;
+
+    /**
+     * Sets up.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkData.install(tweets);
+        tweetManager = TweetManager.getInstance();
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * the first page of the query
+     *
+     * @return the tweets
+     */
+    @Benchmark
+    public ArrayList<Tweet> firstPage() {
+        return tweetManager.searchTweets(query, null, pageSize);
+    }
+}
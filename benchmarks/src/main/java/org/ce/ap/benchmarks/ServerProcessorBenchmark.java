@@ -0,0 +1,183 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.middleClasses.ServerProcessor;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type Server processor benchmark.
+ * a request goes through ServerProcessor the way a client handler sends it, so the
+ * parsing of the method, the services, the tweet log and the response json are measured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class ServerProcessorBenchmark {
+    //// the tweet ids of the data set are 1 to tweets
+    @Param({"10000", "100000", "1000000"})
+    public int tweets;
+
+    /**
+     * Sets up the data set.
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.install(tweets);
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * The type Client.
+     * every benchmark thread is a signed in client with its own user
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger NEXT_USER = new AtomicInteger();
+        private ServerProcessor serverProcessor;
+        private JSONObject signIn;
+        private JSONObject tweet;
+        private JSONObject timeline;
+        private JSONObject userInfo;
+        private JSONObject hotLike;
+        private JSONObject[] likes = new JSONObject[1024];
+        private int nextLike;
+
+        /**
+         * sign in and make the requests once so the benchmarks do not measure building them
+         *
+         * @param benchmark the benchmark, it installs the data set first
+         */
+        @Setup(Level.Trial)
+        public void setUp(ServerProcessorBenchmark benchmark) {
+            int user = NEXT_USER.getAndIncrement();
+            JSONObject parameters = new JSONObject();
+            parameters.put("username", BenchmarkData.username(user));
+            parameters.put("password", BenchmarkData.PASSWORD);
+            signIn = request("SIGNIN", parameters);
+
+            parameters = new JSONObject();
+            parameters.put("text", "a benchmark tweet");
+            tweet = request("TWEET", parameters);
+
+            timeline = request("TIMELINE", new JSONObject());
+
+            parameters = new JSONObject();
+            parameters.put("username", BenchmarkData.username(user + 1));
+            userInfo = request("USER_INFO", parameters);
+
+            hotLike = like(1);
+            for (int i = 0; i < likes.length; i++) {
+                likes[i] = like(ThreadLocalRandom.current().nextLong(1, benchmark.tweets + 1));
+            }
+
+            serverProcessor = new ServerProcessor();
+            JSONObject response = serverProcessor.processRequest(signIn);
+            if (response.getBoolean("hasError"))
+                throw new IllegalStateException("sign in failed " + response);
+        }
+
+        private JSONObject like(long id) {
+            JSONObject tweet = new JSONObject();
+            tweet.put("id", id);
+            JSONObject parameters = new JSONObject();
+            parameters.put("tweet", tweet);
+            return request("LIKE", parameters);
+        }
+
+        private JSONObject nextLike() {
+            nextLike = (nextLike + 1) & (likes.length - 1);
+            return likes[nextLike];
+        }
+
+        private static JSONObject request(String method, JSONObject parameters) {
+            JSONObject request = new JSONObject();
+            request.put("method", method);
+            request.put("parameterValues", parameters);
+            return request;
+        }
+    }
+
+    /**
+     * Sign in json object.
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject signIn(Client client) {
+        return client.serverProcessor.processRequest(client.signIn);
+    }
+
+    /**
+     * Tweet json object.
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject tweet(Client client) {
+        return client.serverProcessor.processRequest(client.tweet);
+    }
+
+    /**
+     * Like json object.
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject like(Client client) {
+        return client.serverProcessor.processRequest(client.nextLike());
+    }
+
+    /**
+     * every thread likes the same tweet so they all wait for one lock
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    @Threads(4)
+    public JSONObject likeSameTweet(Client client) {
+        return client.serverProcessor.processRequest(client.hotLike);
+    }
+
+    /**
+     * Timeline json object.
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject timeline(Client client) {
+        return client.serverProcessor.processRequest(client.timeline);
+    }
+
+    /**
+     * User info json object.
+     *
+     * @param client the client
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject userInfo(Client client) {
+        return client.serverProcessor.processRequest(client.userInfo);
+    }
+}
@@ -0,0 +1,175 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.protocol.MessageFraming;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type Session benchmark.
+ * a real server in another process holds many signed in clients that send nothing while the
+ * benchmark threads ask for their timelines, legacy gives each client a platform thread as the
+ * cached pool did and virtual gives it a virtual thread, so virtual needs the benchmarks to run on java 21
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+@Threads(64)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+    private static final int PORT = 5199;
+    private static final AtomicInteger NEXT_USER = new AtomicInteger();
+    @Param({"legacy", "virtual"})
+    public String mode;
+    @Param({"0", "10000"})
+    public int idleSessions;
+    private Process server;
+    private final ArrayList<Session> idle = new ArrayList<>();
+
+    /**
+     * start the server and sign in the idle clients
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.install(10000);
+        HashMap<String, String> settings = new HashMap<>();
+        settings.put("server.mode", mode);
+        //// no client is refused, only the threads that serve them differ
+        settings.put("server.workers.threads", String.valueOf(idleSessions + 1000));
+        settings.put("server.workers.virtual-tasks", String.valueOf(idleSessions + 1000));
+        server = BenchmarkData.startServer(PORT, settings);
+        for (int i = 0; i < idleSessions; i++) {
+            idle.add(new Session());
+        }
+    }
+
+    /**
+     * Tear down.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (Session session : idle) {
+            session.close();
+        }
+        idle.clear();
+        server.destroy();
+        server.waitFor();
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * The type Active.
+     * every benchmark thread is a client of its own
+     */
+    @State(Scope.Thread)
+    public static class Active {
+        private Session session;
+        private byte[] timeline;
+
+        /**
+         * Sets up.
+         *
+         * @param benchmark the benchmark, it starts the server first
+         * @throws IOException the io exception
+         */
+        @Setup(Level.Trial)
+        public void setUp(SessionBenchmark benchmark) throws IOException {
+            session = new Session();
+            timeline = request("TIMELINE", new JSONObject());
+        }
+
+        /**
+         * Tear down.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            session.close();
+        }
+    }
+
+    /**
+     * Timeline of an active client.
+     *
+     * @param active the active client
+     * @return the response
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public byte[] timeline(Active active) throws IOException {
+        return active.session.send(active.timeline);
+    }
+
+    private static byte[] request(String method, JSONObject parameters) {
+        JSONObject request = new JSONObject();
+        request.put("method", method);
+        request.put("parameterValues", parameters);
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The type Session.
+     * a signed in connection to the server
+     */
+    private static class Session {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+
+        /**
+         * connect and sign in the next user
+         *
+         * @throws IOException the io exception
+         */
+        Session() throws IOException {
+            socket = new Socket("127.0.0.1", PORT);
+            out = new BufferedOutputStream(socket.getOutputStream());
+            in = new BufferedInputStream(socket.getInputStream());
+            JSONObject parameters = new JSONObject();
+            parameters.put("username", BenchmarkData.username(NEXT_USER.getAndIncrement()));
+            parameters.put("password", BenchmarkData.PASSWORD);
+            JSONObject response = new JSONObject(new String(send(request("SIGNIN", parameters)), StandardCharsets.UTF_8));
+            if (response.getBoolean("hasError"))
+                throw new IOException("sign in failed : " + response);
+        }
+
+        /**
+         * send a request and wait for its response
+         *
+         * @param request the request
+         * @return the response
+         * @throws IOException the io exception
+         */
+        byte[] send(byte[] request) throws IOException {
+            MessageFraming.writeMessage(out, request);
+            return MessageFraming.readMessage(in, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Close.
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
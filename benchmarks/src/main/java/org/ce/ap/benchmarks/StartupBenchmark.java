@@ -0,0 +1,56 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.managers.TweetManager;
+import org.ce.ap.server.managers.UserManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Startup benchmark.
+ * the time the managers need to read the users and the tweets before the server can start,
+ * the managers are singletons so every fork boots them once
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = {"-Xms2g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int tweets;
+    //// scan reads every user file and the whole log, snapshot maps the snapshots first
+    @Param({"scan", "snapshot"})
+    public String source;
+
+    /**
+     * Sets up.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkData.install(tweets, source.equals("snapshot"));
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * Boot the managers.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void boot(Blackhole blackhole) {
+        blackhole.consume(UserManager.getInstance());
+        blackhole.consume(TweetManager.getInstance());
+    }
+}
@@ -0,0 +1,76 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.managers.TweetManager;
+import org.ce.ap.server.managers.UserManager;
+import org.ce.ap.server.model.tweet.Tweet;
+import org.ce.ap.server.model.tweet.TweetKey;
+import org.ce.ap.server.model.user.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Timeline benchmark.
+ * the merge of the followings' tweets without the request around it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class TimelineBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int tweets;
+    @Param({"50"})
+    public int pageSize;
+    @Param({"log", "mapped"})
+    public String storage;
+    private TweetManager tweetManager;
+    private User user;
+    //// the last tweet of the tenth page
+    private TweetKey cursor;
+
+    /**
+     * Sets up.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkData.install(tweets, false, storage);
+        tweetManager = TweetManager.getInstance();
+        user = UserManager.getInstance().findUser(BenchmarkData.username(0));
+        ArrayList<Tweet> firstPages = tweetManager.getTimeline(user, null, pageSize * 10);
+        cursor = firstPages.get(firstPages.size() - 1).getKey();
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * First page array list.
+     *
+     * @return the page
+     */
+    @Benchmark
+    public ArrayList<Tweet> firstPage() {
+        return tweetManager.getTimeline(user, null, pageSize);
+    }
+
+    /**
+     * Page after cursor array list.
+     *
+     * @return the page
+     */
+    @Benchmark
+    public ArrayList<Tweet> pageAfterCursor() {
+        return tweetManager.getTimeline(user, cursor, pageSize);
+    }
+}
@@ -0,0 +1,105 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.server.model.tweet.Tweet;
+import org.ce.ap.server.model.user.User;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Tweet serialization benchmark.
+ * Tweet.toJson, its string and the streamed bytes the server writes to the socket,
+ * from the cached bytes of an unchanged tweet and after a change
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TweetSerializationBenchmark {
+    @Param({"0", "100", "1000"})
+    public int likes;
+    @Param({"0", "10"})
+    public int replies;
+    private Tweet tweet;
+    private User liker;
+    private boolean liked;
+    private final JsonOutput output = new JsonOutput();
+
+    /**
+     * Sets up.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkData.useDefaultConfig();
+        User author = user(0);
+        tweet = new Tweet(author, "a tweet that is liked and replied", 1);
+        for (int i = 1; i <= likes; i++) {
+            tweet.likeTweet(user(i));
+        }
+        for (int i = 1; i <= replies; i++) {
+            tweet.addNewReply(new Tweet(user(i), "reply number " + i, 1 + i));
+        }
+        liker = user(likes + 1);
+    }
+
+    private static User user(int index) {
+        return new User("Bench", "User", BenchmarkData.username(index), BenchmarkData.PASSWORD, LocalDate.of(2000, 1, 1));
+    }
+
+    /**
+     * To json json object.
+     *
+     * @return the json object
+     */
+    @Benchmark
+    public JSONObject toJson() {
+        return tweet.toJson();
+    }
+
+    /**
+     * To json string string.
+     *
+     * @return the string
+     */
+    @Benchmark
+    public String toJsonString() {
+        return tweet.toJson().toString();
+    }
+
+    /**
+     * the tweet written to a connection's reused buffer
+     *
+     * @return the number of bytes
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public int streamed() throws IOException {
+        output.writeResponse(tweet.toStreamedJson());
+        return output.size();
+    }
+
+    /**
+     * the tweet written again after every change, its cached bytes are never reused
+     *
+     * @return the number of bytes
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public int streamedAfterChange() throws IOException {
+        if (liked)
+            tweet.removeLike(liker);
+        else
+            tweet.likeTweet(liker);
+        liked = !liked;
+        output.writeResponse(tweet.toStreamedJson());
+        return output.size();
+    }
+}
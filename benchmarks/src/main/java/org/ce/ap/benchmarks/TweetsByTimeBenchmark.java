@@ -0,0 +1,88 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.server.exceptions.InvalidDateException;
+import org.ce.ap.server.managers.TweetManager;
+import org.ce.ap.server.model.tweet.Tweet;
+import org.ce.ap.server.model.tweet.TweetKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Tweets by time benchmark.
+ * the tweets of the last minutes of the data set and a page from the middle of an hour of it, so the
+ * cost is finding them and not reading them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class TweetsByTimeBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int tweets;
+    @Param({"100"})
+    public int found;
+    @Param({"50"})
+    public int pageSize;
+    private TweetManager tweetManager;
+    private LocalDateTime since;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    //// the last tweet of the third page of the hour
+    private TweetKey cursor;
+
+    /**
+     * Sets up.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkData.install(tweets);
+        tweetManager = TweetManager.getInstance();
+        since = BenchmarkData.sendDate(tweets - found);
+        from = BenchmarkData.sendDate(tweets / 2);
+        to = from.plusHours(1);
+        //// the tweets are read from the log once, the trial measures the cached ones
+        int sinceCount = tweetManager.findTweetsByTime(since).size();
+        ArrayList<Tweet> firstPages = tweetManager.findTweetsByTime(from, to, null, pageSize * 3);
+        cursor = firstPages.get(firstPages.size() - 1).getKey();
+        tweetManager.findTweetsByTime(from, to, cursor, pageSize);
+        System.out.println();
+        System.out.println(sinceCount + " tweets since " + since + ", "
+                + tweetManager.findKeysByTime(from, to).size() + " from " + from + " to " + to);
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    /**
+     * the tweets sent after a time
+     *
+     * @return the tweets
+     * @throws InvalidDateException the invalid date exception
+     */
+    @Benchmark
+    public ArrayList tweetsSince() throws InvalidDateException {
+        return tweetManager.findTweetsByTime(since);
+    }
+
+    /**
+     * a page of the tweets sent in an hour, after a cursor
+     *
+     * @return the tweets
+     */
+    @Benchmark
+    public ArrayList<Tweet> pageOfHour() {
+        return tweetManager.findTweetsByTime(from, to, cursor, pageSize);
+    }
+}
@@ -0,0 +1,77 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.server.middleClasses.ServerProcessor;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type User search benchmark.
+ * the request a client sends to find a user and the response the server writes for it, every user
+ * of the data set with its followings and followers or the few that start with what was typed.
+ * the size of each response is printed in the setup
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class UserSearchBenchmark {
+    @Param({"SHOW_USERS", "SEARCH_USERS"})
+    public String method;
+    private final JsonOutput output = new JsonOutput();
+    private ServerProcessor serverProcessor;
+    private JSONObject request;
+
+    /**
+     * sign in and write the response once
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.install(10000);
+        serverProcessor = new ServerProcessor();
+        JSONObject parameters = new JSONObject();
+        parameters.put("username", BenchmarkData.username(0));
+        parameters.put("password", BenchmarkData.PASSWORD);
+        serverProcessor.processRequest(request("SIGNIN", parameters));
+        parameters = new JSONObject();
+        parameters.put("query", "user12");
+        request = request(method, parameters);
+        System.out.println();
+        System.out.println(method + " : " + findUsers() + " bytes");
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        serverProcessor.close();
+        BenchmarkData.uninstall();
+    }
+
+    private static JSONObject request(String method, JSONObject parameters) {
+        JSONObject request = new JSONObject();
+        request.put("method", method);
+        request.put("parameterValues", parameters);
+        return request;
+    }
+
+    /**
+     * process the request and write the response
+     *
+     * @return the size of the response
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public int findUsers() throws IOException {
+        output.writeResponse(serverProcessor.processRequest(request));
+        return output.size();
+    }
+}
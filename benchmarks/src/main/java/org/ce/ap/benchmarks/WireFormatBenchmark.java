@@ -0,0 +1,137 @@
+package org.ce.ap.benchmarks;
+
+import org.ce.ap.protocol.BinaryInput;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.server.middleClasses.ServerProcessor;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Wire format benchmark.
+ * the cpu time of both ends of a request, the client that writes it and the server that reads it,
+ * and of a timeline page, the server that writes it and the client that reads it, in the json
+ * form and in the binary form. the bytes each form puts on the wire are printed in the setup
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+    @Param({"json", "binary"})
+    public String format;
+    private boolean binary;
+    private final JsonOutput jsonOutput = new JsonOutput();
+    private final BinaryOutput binaryOutput = new BinaryOutput();
+    private JSONObject request;
+    private JSONObject timeline;
+    private byte[] requestBytes;
+    private byte[] timelineBytes;
+
+    /**
+     * sign in, take a timeline page and write both messages once in the chosen form
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.install(10000);
+        binary = "binary".equals(format);
+        ServerProcessor serverProcessor = new ServerProcessor();
+        JSONObject parameters = new JSONObject();
+        parameters.put("username", BenchmarkData.username(0));
+        parameters.put("password", BenchmarkData.PASSWORD);
+        serverProcessor.processRequest(request("SIGNIN", parameters));
+
+        parameters = new JSONObject();
+        parameters.put("text", "a benchmark tweet with a few words in it");
+        request = request("TWEET", parameters);
+        request.put("requestId", 12345);
+        timeline = serverProcessor.processRequest(request("TIMELINE", new JSONObject()));
+        if (timeline.getBoolean("hasError"))
+            throw new IllegalStateException("timeline failed " + timeline);
+        serverProcessor.close();
+
+        requestBytes = writeRequest();
+        timelineBytes = writeTimeline();
+        System.out.println();
+        System.out.println(format + " : request " + requestBytes.length + " bytes, timeline of "
+                + timeline.getInt("count") + " tweets " + timelineBytes.length + " bytes");
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.uninstall();
+    }
+
+    private static JSONObject request(String method, JSONObject parameters) {
+        JSONObject request = new JSONObject();
+        request.put("method", method);
+        request.put("parameterValues", parameters);
+        return request;
+    }
+
+    /**
+     * the client writes a request
+     *
+     * @return the bytes
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public byte[] writeRequest() throws IOException {
+        if (!binary)
+            return request.toString().getBytes(StandardCharsets.UTF_8);
+        binaryOutput.writeRequest(request);
+        return Arrays.copyOf(binaryOutput.array(), binaryOutput.size());
+    }
+
+    /**
+     * the server reads a request
+     *
+     * @return the request
+     */
+    @Benchmark
+    public JSONObject readRequest() {
+        if (binary)
+            return BinaryInput.readRequest(requestBytes);
+        return new JSONObject(new String(requestBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * the server writes a timeline page, the tweets come from their cached json bytes
+     *
+     * @return the bytes
+     * @throws IOException the io exception
+     */
+    @Benchmark
+    public byte[] writeTimeline() throws IOException {
+        if (binary) {
+            binaryOutput.writeResponse(timeline);
+            return Arrays.copyOf(binaryOutput.array(), binaryOutput.size());
+        }
+        jsonOutput.writeResponse(timeline);
+        return Arrays.copyOf(jsonOutput.array(), jsonOutput.size());
+    }
+
+    /**
+     * the client reads a timeline page
+     *
+     * @return the response
+     */
+    @Benchmark
+    public JSONObject readTimeline() {
+        if (binary)
+            return BinaryInput.readResponse(timelineBytes);
+        return new JSONObject(new String(timelineBytes, StandardCharsets.UTF_8));
+    }
+}
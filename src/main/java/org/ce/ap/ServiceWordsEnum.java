@@ -2,6 +2,7 @@ package org.ce.ap;
 
 /**
  * The enum Service words enum.
+ * the binary protocol sends the ordinal of a method, so a new method is added at the end
  */
 public enum ServiceWordsEnum {
     /**
@@ -81,5 +82,25 @@ public enum ServiceWordsEnum {
      */
     SHOW_USERS,
     USER_INFO,
+    /**
+     * Batch service words enum.
+     * parameterValues.requests is a list of requests that run in order, the result has a response for each
+     */
+    BATCH,
+    /**
+     * Compress service words enum.
+     * the large responses of the connection are compressed from now on, see MessageDeflater
+     */
+    COMPRESS,
+    /**
+     * Search tweets service words enum.
+     * parameterValues.query is the words, the result is the newest tweets that have all of them
+     */
+    SEARCH_TWEETS,
+    /**
+     * Search users service words enum.
+     * parameterValues.query is the beginning of a username or a name, the result is the names of a few users
+     */
+    SEARCH_USERS,
 }
 
@@ -234,6 +234,9 @@ public class CommandParserServiceImpl implements CommandParserService {
             } else if (command.equals(ServiceWordsEnum.TIMELINE)) {
                 showTimeLineTweets();
                 isExit = true;
+            } else if (command.equals(ServiceWordsEnum.SEARCH_TWEETS)) {
+                searchTweetsCommand();
+                isExit = true;
             } else if (command.equals(ServiceWordsEnum.EXIT))
                 isExit = true;
         }
@@ -269,6 +272,8 @@ public class CommandParserServiceImpl implements CommandParserService {
                 return ServiceWordsEnum.DISLIKE;
             if (index == 8)
                 return ServiceWordsEnum.TIMELINE;
+            if (index == 9)
+                return ServiceWordsEnum.SEARCH_TWEETS;
             if (index == 0)
                 return ServiceWordsEnum.EXIT;
             System.out.println("enter a valid index");
@@ -301,6 +306,26 @@ public class CommandParserServiceImpl implements CommandParserService {
         return request;
     }
 
+    /**
+     * search the tweets for the words the user enters
+     *
+     * @return a JsonArray that contains the found tweets
+     * @throws IOException
+     */
+    private JSONArray searchTweetsCommand() throws IOException {
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("pls enter the words :");
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("query", scanner.nextLine());
+        JSONObject response = connectionService.request(makeRequest(ServiceWordsEnum.SEARCH_TWEETS, jsonObject));
+        consoleViewService.processServerResponse(ServiceWordsEnum.SEARCH_TWEETS, response);
+        JSONArray tweets = response.optJSONArray("result");
+        if (tweets == null)
+            return new JSONArray();
+        consoleViewService.showTimeline(tweets);
+        return tweets;
+    }
+
     /**
      * tweet command
      *
@@ -1,11 +1,21 @@
 package  org.ce.ap.client.CLI.services.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
+import org.ce.ap.ServiceWordsEnum;
 import  org.ce.ap.client.CLI.services.ConnectionService;
+import org.ce.ap.client.ClientConfig;
+import org.ce.ap.protocol.BinaryInput;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.MessageFraming;
+import org.ce.ap.protocol.MessageInflater;
 import org.json.JSONObject;
 
 /**
@@ -15,6 +25,10 @@ public class ConnectionServiceImpl implements ConnectionService {
     private Socket client;
     private OutputStream out;
     private InputStream in;
+    private final int maxMessageSize;
+    //// null when the requests are sent as json
+    private final BinaryOutput requestOutput;
+    private final MessageInflater inflater;
 
     /**
      * Instantiates a new Connection service.
@@ -24,8 +38,19 @@ public class ConnectionServiceImpl implements ConnectionService {
      */
     public ConnectionServiceImpl(Socket client) throws IOException {
         this.client = client;
-        this.out = client.getOutputStream();
-        this.in = client.getInputStream();
+        this.out = new BufferedOutputStream(client.getOutputStream());
+        this.in = new BufferedInputStream(client.getInputStream());
+        String size = ClientConfig.getProperty("client.max-message-size");
+        this.maxMessageSize = size == null ? MessageFraming.DEFAULT_MAX_MESSAGE_SIZE : Integer.parseInt(size);
+        this.requestOutput = "binary".equals(ClientConfig.getProperty("client.protocol")) ? new BinaryOutput() : null;
+        this.inflater = new MessageInflater(maxMessageSize);
+        //// the server may refuse, the responses then stay as they are
+        if (Boolean.parseBoolean(ClientConfig.getProperty("client.compression"))) {
+            JSONObject compress = new JSONObject();
+            compress.put("method", ServiceWordsEnum.COMPRESS);
+            compress.put("parameterValues", new JSONObject());
+            request(compress);
+        }
     }
 
     /**
@@ -37,12 +62,25 @@ public class ConnectionServiceImpl implements ConnectionService {
      */
     @Override
     public JSONObject request(JSONObject jsonObject) throws IOException {
-        byte[] buffer = new byte[8192];
         System.out.println("**" + jsonObject);
-        out.write(jsonObject.toString().getBytes());
-        int read = in.read(buffer);
-        String str = new String(buffer, 0, read);
-        JSONObject response = new JSONObject(str);
+        if (requestOutput == null) {
+            MessageFraming.writeMessage(out, jsonObject.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            requestOutput.writeRequest(jsonObject);
+            MessageFraming.writeMessage(out, requestOutput.array(), 0, requestOutput.size());
+        }
+        byte[] message = MessageFraming.readMessage(in, maxMessageSize);
+        if (message == null)
+            throw new EOFException("the server closed the connection");
+        if (MessageInflater.isCompressed(message))
+            message = inflater.inflate(message);
+        JSONObject response;
+        if (BinaryInput.isBinary(message)) {
+            response = BinaryInput.readResponse(message);
+        } else {
+            String str = new String(message, StandardCharsets.UTF_8);
+            response = new JSONObject(str);
+        }
         System.out.println(response);
         return response;
     }
@@ -43,6 +43,7 @@ public class ConsoleViewServiceImpl implements ConsoleViewService {
         System.out.println("6 ) like a tweet");
         System.out.println("7 ) unlike a tweet");
         System.out.println("8 ) show timeline");
+        System.out.println("9 ) search tweets");
         System.out.println("0 ) exit");
     }
 
@@ -128,6 +129,12 @@ public class ConsoleViewServiceImpl implements ConsoleViewService {
                     System.out.println("cant show timeline!");
                 }
                 break;
+            case SEARCH_TWEETS:
+                if (response.getBoolean("hasError"))
+                    System.out.println("search is failed");
+                else if (response.getInt("count") == 0)
+                    System.out.println("no tweet has these words");
+                break;
             case SHOW_MY_TWEETS:
                 if (!response.getBoolean("hasError"))
                     System.out.println("show_my_tweets attempt is successful");
@@ -1,21 +1,45 @@
 package org.ce.ap.client.GUI;
 
 import org.ce.ap.ServiceWordsEnum;
+import org.ce.ap.client.ClientConfig;
+import org.ce.ap.protocol.BinaryInput;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.MessageFraming;
+import org.ce.ap.protocol.MessageInflater;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * The type Connection service.
+ * every request carries a requestId and one reader thread hands each response to the request
+ * with the same id, so many requests can be in flight on the socket and answered in any order
  */
 public class ConnectionServiceImpl  {
     private Socket client;
     private OutputStream out;
     private InputStream in;
+    private final int maxMessageSize;
+    //// null when the requests are sent as json, used under the lock of out
+    private final BinaryOutput requestOutput;
+    //// used by the reader thread only
+    private final MessageInflater inflater;
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final ConcurrentHashMap<Long, CompletableFuture<JSONObject>> pending = new ConcurrentHashMap<>();
+    //// why the connection ended, the requests after it fail at once
+    private volatile IOException failure;
     private static ConnectionServiceImpl connectionService;
 
     /**
@@ -26,8 +50,18 @@ public class ConnectionServiceImpl  {
      */
     private ConnectionServiceImpl(Socket client) throws IOException {
         this.client = client;
-        this.out = client.getOutputStream();
-        this.in = client.getInputStream();
+        this.out = new BufferedOutputStream(client.getOutputStream());
+        this.in = new BufferedInputStream(client.getInputStream());
+        String size = ClientConfig.getProperty("client.max-message-size");
+        this.maxMessageSize = size == null ? MessageFraming.DEFAULT_MAX_MESSAGE_SIZE : Integer.parseInt(size);
+        this.requestOutput = "binary".equals(ClientConfig.getProperty("client.protocol")) ? new BinaryOutput() : null;
+        this.inflater = new MessageInflater(maxMessageSize);
+        Thread reader = new Thread(this::readResponses, "response-reader");
+        reader.setDaemon(true);
+        reader.start();
+        //// the server may refuse, the responses then stay as they are
+        if (Boolean.parseBoolean(ClientConfig.getProperty("client.compression")))
+            requestAsync(ServiceWordsEnum.COMPRESS, new JSONObject());
     }
 
     public static void  makeConnectionService(Socket client) throws IOException {
@@ -47,20 +81,98 @@ public class ConnectionServiceImpl  {
      */
 
     public JSONObject request(JSONObject jsonObject) throws IOException {
-        byte[] buffer = new byte[1000000000];
+        try {
+            return requestAsync(jsonObject).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public JSONObject request(ServiceWordsEnum serviceWordsEnum, JSONObject jsonObject) throws IOException {
+        return request(makeRequest(serviceWordsEnum, jsonObject));
+    }
+
+    /**
+     * send a request without waiting for its response
+     *
+     * @param jsonObject the request, its requestId is set here
+     * @return the response when it comes, it completes on the reader thread
+     */
+    public CompletableFuture<JSONObject> requestAsync(JSONObject jsonObject) {
+        long requestId = nextRequestId.incrementAndGet();
+        jsonObject.put("requestId", requestId);
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        pending.put(requestId, response);
         System.out.println("**" + jsonObject);
-        out.write(jsonObject.toString().getBytes());
-        int read = in.read(buffer);
-        String str = new String(buffer, 0, read);
-        JSONObject response = new JSONObject(str);
-        System.out.println(response);
+        try {
+            if (failure != null)
+                throw failure;
+            synchronized (out) {
+                if (requestOutput == null) {
+                    MessageFraming.writeMessage(out, jsonObject.toString().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    requestOutput.writeRequest(jsonObject);
+                    MessageFraming.writeMessage(out, requestOutput.array(), 0, requestOutput.size());
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            response.completeExceptionally(e);
+        }
         return response;
     }
 
-    public JSONObject request(ServiceWordsEnum serviceWordsEnum, JSONObject jsonObject) throws IOException {
+    public CompletableFuture<JSONObject> requestAsync(ServiceWordsEnum serviceWordsEnum, JSONObject jsonObject) {
+        return requestAsync(makeRequest(serviceWordsEnum, jsonObject));
+    }
+
+    private JSONObject makeRequest(ServiceWordsEnum serviceWordsEnum, JSONObject jsonObject) {
         JSONObject request = new JSONObject();
         request.put("method", serviceWordsEnum);
         request.put("parameterValues", jsonObject);
-        return request(request);
+        return request;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                byte[] message = MessageFraming.readMessage(in, maxMessageSize);
+                if (message == null)
+                    throw new EOFException("the server closed the connection");
+                if (MessageInflater.isCompressed(message))
+                    message = inflater.inflate(message);
+                JSONObject response = BinaryInput.isBinary(message) ? BinaryInput.readResponse(message)
+                        : new JSONObject(new String(message, StandardCharsets.UTF_8));
+                System.out.println(response);
+                //// a server that does not know the ids answers in order
+                long requestId = response.has("requestId") ? response.getLong("requestId") : oldestRequest();
+                CompletableFuture<JSONObject> request = pending.remove(requestId);
+                if (request != null)
+                    request.complete(response);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        }
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<JSONObject> request = pending.remove(requestId);
+            if (request != null)
+                request.completeExceptionally(failure);
+        }
+    }
+
+    private long oldestRequest() {
+        long oldest = -1;
+        for (Long requestId : pending.keySet()) {
+            if (oldest == -1 || requestId < oldest)
+                oldest = requestId;
+        }
+        return oldest;
     }
 }
@@ -55,7 +55,19 @@ public class ViewService {
     }
 
     public static void showTweets(JSONArray tweets, VBox vBox, ScrollPane scroll) throws Exception {
-        if(tweets.length()==0){
+        showTweets(tweets,vBox,scroll,true);
+    }
+
+    /**
+     * add the tweets of a page to the end of the list
+     * @param tweets the tweets of the page
+     * @param vBox the list
+     * @param scroll the scroll pane of the list
+     * @param firstPage only an empty first page shows the no tweet label
+     * @throws Exception
+     */
+    public static void showTweets(JSONArray tweets, VBox vBox, ScrollPane scroll, boolean firstPage) throws Exception {
+        if(tweets.length()==0 && firstPage){
             Label label = new Label("no tweet yet!");
             vBox.getChildren().add(label);
             scroll.setContent(vBox);
@@ -82,6 +94,18 @@ public class ViewService {
         scroll.setContent(vBox);
     }
 
+    /**
+     * call the loader whenever the scroll pane nears its bottom
+     * @param scroll the scroll pane
+     * @param loader loads the next page
+     */
+    public static void onScrollEnd(ScrollPane scroll, Runnable loader){
+        scroll.vvalueProperty().addListener((observable, oldValue, newValue) -> {
+            if(newValue.doubleValue() >= 0.9 * scroll.getVmax() && oldValue.doubleValue() < newValue.doubleValue())
+                loader.run();
+        });
+    }
+
     public static void makeWarning(TextField textField,String message){
         textField.setText(message);
         textField.selectAll();
@@ -1,5 +1,6 @@
 package org.ce.ap.client.GUI.controller;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -29,6 +30,8 @@ import java.io.IOException;
  */
 public class ProfileController implements Updater{
     JSONObject userJson ;
+    ///// last tweet of the shown pages, null when there is no more page
+    private JSONObject nextCursor;
     ///// user's biography
     @FXML
     private Label biography;
@@ -90,6 +93,8 @@ public class ProfileController implements Updater{
         username.setText(user.getString("username"));
 //        biography.setText(user.getString("biography"));
         ViewService.showTweets(tweets,vbox,scroll);
+        nextCursor = userInfo.optJSONObject("nextCursor");
+        ViewService.onScrollEnd(scroll,this::showNextPage);
 
         if(username.getText().equals(GraphicConfig.getProperty("username.logIn"))){
             anchor.getChildren().remove(follow);
@@ -107,6 +112,31 @@ public class ProfileController implements Updater{
             biography.setText(user.getString("biography"));
     }
 
+    /**
+     * load the next page of the user's tweets when the scroll nears the bottom
+     */
+    private void showNextPage(){
+        if(nextCursor==null)
+            return;
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("username", userJson.getString("username"));
+        jsonObject.put("cursor", nextCursor);
+        ///// no other page is asked for until this one comes
+        nextCursor = null;
+        ConnectionServiceImpl.getConnectionService().requestAsync(ServiceWordsEnum.USER_INFO,jsonObject)
+                .thenAccept(response -> Platform.runLater(() -> {
+                    try {
+                        if(response.getBoolean("hasError"))
+                            return;
+                        JSONObject userInfo = response.getJSONArray("result").getJSONObject(0);
+                        nextCursor = userInfo.optJSONObject("nextCursor");
+                        ViewService.showTweets(userInfo.getJSONArray("tweets"),vbox,scroll,false);
+                    }catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }));
+    }
+
     /**
      * follow or unfollow a user
      * @param event
@@ -1,8 +1,13 @@
 package org.ce.ap.client.GUI.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.VBox;
+import org.ce.ap.ServiceWordsEnum;
+import org.ce.ap.client.GUI.ConnectionServiceImpl;
 import org.ce.ap.client.GUI.ViewService;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -17,10 +22,49 @@ public class SearchUsers implements Updater{
     @FXML
     private VBox vBox;
 
+    @FXML
+    private TextField query;
+
 
     @Override
     public void update(JSONObject jsonObject) throws Exception {
-        JSONArray users = jsonObject.getJSONArray("result");
+        JSONArray users = jsonObject.optJSONArray("result");
+        if(users!=null && !jsonObject.optBoolean("hasError",true))
+            showUsers(users);
+    }
+
+    /**
+     * ask for the users of the query whenever it changes
+     * @param event the key event
+     */
+    @FXML
+    void search(KeyEvent event){
+        String text = query.getText().trim();
+        if(text.isEmpty()){
+            vBox.getChildren().clear();
+            return;
+        }
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("query",text);
+        ConnectionServiceImpl.getConnectionService().requestAsync(ServiceWordsEnum.SEARCH_USERS,jsonObject)
+                .thenAccept(response -> Platform.runLater(() -> {
+                    ///// the answer of an older query that came late is left out
+                    if(!text.equals(query.getText().trim()))
+                        return;
+                    if(response.optBoolean("hasError",true)){
+                        vBox.getChildren().clear();
+                        return;
+                    }
+                    try {
+                        showUsers(response.getJSONArray("result"));
+                    }catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }));
+    }
+
+    private void showUsers(JSONArray users) throws Exception {
+        vBox.getChildren().clear();
         ViewService.showUsers(users,vBox,scroll);
     }
 }
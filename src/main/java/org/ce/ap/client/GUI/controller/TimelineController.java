@@ -1,6 +1,7 @@
 package org.ce.ap.client.GUI.controller;
 
 import com.google.gson.JsonArray;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -27,6 +28,8 @@ import java.util.ArrayList;
 
 public class TimelineController extends TopMenu{
     private ArrayList<Tweet> tweetList;
+    ///// last tweet of the shown pages, null when there is no more page
+    private JSONObject nextCursor;
     @FXML
     private ScrollPane scroll;
 
@@ -41,7 +44,7 @@ public class TimelineController extends TopMenu{
         }catch (Exception e) {
             e.printStackTrace();
         }
-
+        ViewService.onScrollEnd(scroll,this::showNextPage);
     }
     @FXML
     void refresh(ActionEvent event) throws Exception {
@@ -65,21 +68,45 @@ public class TimelineController extends TopMenu{
 
     }
 
-    private JSONArray tweetList() throws IOException {
-        JSONObject response = ConnectionServiceImpl.getConnectionService().request(ServiceWordsEnum.TIMELINE,new JSONObject());
+    private JSONArray tweetList(JSONObject cursor) throws IOException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.putOpt("cursor",cursor);
+        JSONObject response = ConnectionServiceImpl.getConnectionService().request(ServiceWordsEnum.TIMELINE,jsonObject);
+        nextCursor = response.optJSONObject("nextCursor");
         JSONArray tweets = (JSONArray) response.get("result");
         return tweets;
     }
 
     public void showTweets() throws Exception {
-        JSONArray tweets = tweetList();
+        JSONArray tweets = tweetList(null);
         ViewService.showTweets(tweets,vBox,scroll);
     }
+
+    /**
+     * load the next page of the timeline when the scroll nears the bottom
+     */
+    private void showNextPage(){
+        if(nextCursor==null)
+            return;
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("cursor",nextCursor);
+        ///// no other page is asked for until this one comes
+        nextCursor = null;
+        ConnectionServiceImpl.getConnectionService().requestAsync(ServiceWordsEnum.TIMELINE,jsonObject)
+                .thenAccept(response -> Platform.runLater(() -> {
+                    try {
+                        nextCursor = response.optJSONObject("nextCursor");
+                        ViewService.showTweets((JSONArray) response.get("result"),vBox,scroll,false);
+                    }catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }));
+    }
     @FXML
     void searchUsers(ActionEvent event) throws Exception {
-        JSONObject response = ConnectionServiceImpl.getConnectionService().request(ServiceWordsEnum.SHOW_USERS,new JSONObject());
         Stage stage = (Stage) ((Button)event.getSource()).getScene().getWindow();
-        ViewService.showScene(stage,"search.page",response);
+        ///// the users are asked for as the query is typed
+        ViewService.showScene(stage,"search.page",new JSONObject());
     }
 
 }
@@ -1,6 +1,7 @@
 package org.ce.ap.client.GUI.controller;
 
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -75,16 +76,17 @@ public class Tweet {
         }
     }
     @FXML
-    void like(ActionEvent event) throws IOException {
+    void like(ActionEvent event) {
         JSONObject jsonObject = new JSONObject();
         jsonObject.put("tweet", tweetJson);
-        JSONObject response = ConnectionServiceImpl.getConnectionService().request(ServiceWordsEnum.LIKE,jsonObject);
-        if (!response.getBoolean("hasError")){
-            int likes = response.getJSONArray("likes").length();
-            likeNumber.setText(String.valueOf(likes));
-//            update((JSONObject)((JSONArray)response.get("result")).get(0));
-        }
-
+        ///// the page does not wait for the server, the count changes when the answer comes
+        ConnectionServiceImpl.getConnectionService().requestAsync(ServiceWordsEnum.LIKE,jsonObject)
+                .thenAccept(response -> Platform.runLater(() -> {
+                    if (!response.getBoolean("hasError")){
+                        int likes = response.getJSONArray("likes").length();
+                        likeNumber.setText(String.valueOf(likes));
+                    }
+                }));
     }
 
     @FXML
@@ -0,0 +1,162 @@
+package org.ce.ap.protocol;
+
+import org.ce.ap.ServiceWordsEnum;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The type Binary input.
+ * reads the messages BinaryOutput writes back to the json objects the json form would give
+ */
+public class BinaryInput {
+    private static final ServiceWordsEnum[] METHODS = ServiceWordsEnum.values();
+    private final byte[] bytes;
+    private int position;
+
+    private BinaryInput(byte[] bytes) {
+        this.bytes = bytes;
+        //// the magic byte
+        this.position = 1;
+    }
+
+    /**
+     * whether a message is in the binary form
+     *
+     * @param message the message
+     * @return true if it starts with the magic byte
+     */
+    public static boolean isBinary(byte[] message) {
+        return message.length > 0 && message[0] == BinaryOutput.MAGIC;
+    }
+
+    /**
+     * Read request json object.
+     *
+     * @param message the message
+     * @return the request, its method is the ServiceWordsEnum itself
+     */
+    public static JSONObject readRequest(byte[] message) {
+        BinaryInput in = new BinaryInput(message);
+        int ordinal = (int) in.readVarLong();
+        if (ordinal < 0 || ordinal >= METHODS.length)
+            throw new JSONException("unknown method " + ordinal);
+        JSONObject request = new JSONObject();
+        request.put("method", METHODS[ordinal]);
+        long requestId = in.readVarLong();
+        if (requestId > 0)
+            request.put("requestId", requestId - 1);
+        request.put("parameterValues", in.readValue());
+        return request;
+    }
+
+    /**
+     * Read response json object.
+     *
+     * @param message the message
+     * @return the response
+     */
+    public static JSONObject readResponse(byte[] message) {
+        Object response = new BinaryInput(message).readValue();
+        if (!(response instanceof JSONObject))
+            throw new JSONException("a response is not an object");
+        return (JSONObject) response;
+    }
+
+    private Object readValue() {
+        return readValue(readByte());
+    }
+
+    private Object readValue(int tag) {
+        switch (tag) {
+            case BinaryOutput.NULL:
+                return JSONObject.NULL;
+            case BinaryOutput.FALSE:
+                return false;
+            case BinaryOutput.TRUE:
+                return true;
+            case BinaryOutput.INT:
+                long zigzag = readVarLong();
+                long number = zigzag >>> 1 ^ -(zigzag & 1);
+                //// org.json reads the numbers that fit in an int as Integer
+                if (number == (int) number)
+                    return (int) number;
+                return number;
+            case BinaryOutput.DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = bits << 8 | readByte();
+                }
+                return Double.longBitsToDouble(bits);
+            case BinaryOutput.STRING:
+                return readString(length());
+            case BinaryOutput.ARRAY:
+                JSONArray jsonArray = new JSONArray();
+                int item;
+                while ((item = readByte()) != BinaryOutput.END) {
+                    jsonArray.put(readValue(item));
+                }
+                return jsonArray;
+            case BinaryOutput.OBJECT:
+                JSONObject jsonObject = new JSONObject();
+                String key;
+                while ((key = readKey()) != null) {
+                    jsonObject.put(key, readValue());
+                }
+                return jsonObject;
+            case BinaryOutput.NUMBER:
+                return JSONObject.stringToValue(readString(length()));
+            default:
+                throw new JSONException("unknown tag " + tag + " at " + (position - 1));
+        }
+    }
+
+    //// null at the end of the object
+    private String readKey() {
+        long key = readVarLong();
+        if (key == 0)
+            return null;
+        if ((key & 1) == 1) {
+            if ((key >>> 1) >= BinaryOutput.KEYS.length)
+                throw new JSONException("unknown key " + (key >>> 1));
+            return BinaryOutput.KEYS[(int) (key >>> 1)];
+        }
+        return readString(checkLength((key >>> 1) - 1));
+    }
+
+    private String readString(int length) {
+        String string = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    private int length() {
+        return checkLength(readVarLong());
+    }
+
+    //// a length can not be more than what is left, so a broken message does not allocate much
+    private int checkLength(long length) {
+        if (length < 0 || length > bytes.length - position)
+            throw new JSONException("a length of " + length + " is past the end of the message");
+        return (int) length;
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new JSONException("a varint is too long");
+    }
+
+    private int readByte() {
+        if (position >= bytes.length)
+            throw new JSONException("the binary message is cut");
+        return bytes[position++] & 0xFF;
+    }
+}
@@ -0,0 +1,428 @@
+package org.ce.ap.protocol;
+
+import org.ce.ap.ServiceWordsEnum;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The type Binary output.
+ * a reusable buffer for the binary form of a message. a binary message starts with MAGIC, a byte
+ * that no json text starts with, so both forms can be sent on one connection and the server
+ * answers in the form of the request.
+ * a request is MAGIC, the ordinal of its method in ServiceWordsEnum, its requestId + 1 or 0 when it
+ * has none, and its parameterValues. a response is MAGIC and the response object.
+ * a value is a tag and its data, the integers and the lengths are varints, an object or an array
+ * ends with END, and a key of KEYS is written as its index. a value does not depend on the rest of
+ * its message, so a StreamedJson can keep the bytes of its binary form as a tweet keeps its json,
+ * and the ones that do not are read from their json text and written again in this form
+ */
+public class BinaryOutput {
+    /**
+     * the first byte of every binary message
+     */
+    public static final byte MAGIC = (byte) 0xB1;
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INT = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+    static final int ARRAY = 6;
+    static final int OBJECT = 7;
+    //// a number that is not a long, as its json text
+    static final int NUMBER = 8;
+    static final int END = 9;
+    //// the keys of the requests and the responses, both ends must have the same list so a new key is added at the end
+    static final String[] KEYS = {"result", "count", "hasError", "errorCode", "requestId", "nextCursor",
+            "id", "author", "text", "likes", "replies", "sendDate", "retweets", "retweetedTweet", "newTweet",
+            "firstName", "lastName", "username", "password", "birthDate", "registryDate", "biography",
+            "followings", "followers", "user", "tweet", "retweet", "reply", "tweets", "cursor", "pageSize",
+            "requests", "retweetId", "replyId", "query"};
+    private static final HashMap<String, Integer> KEY_INDEX = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 8192;
+    //// a buffer that grew for a large message is not kept for the next ones
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+    //// the text of the StreamedJson values is written here first
+    private final JsonOutput text = new JsonOutput();
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_INDEX.put(KEYS[i], i);
+        }
+    }
+
+    /**
+     * write a request in the buffer, the previous content is dropped
+     *
+     * @param request the request with its method, parameterValues and requestId if it has one
+     * @throws IOException the io exception
+     */
+    public void writeRequest(JSONObject request) throws IOException {
+        reset();
+        writeByte(MAGIC);
+        writeVarLong(ServiceWordsEnum.valueOf(String.valueOf(request.get("method"))).ordinal());
+        writeVarLong(request.has("requestId") ? request.getLong("requestId") + 1 : 0);
+        writeValue(request.opt("parameterValues"));
+    }
+
+    /**
+     * write a response in the buffer, the previous content is dropped
+     *
+     * @param response the response
+     * @throws IOException the io exception
+     */
+    public void writeResponse(Object response) throws IOException {
+        reset();
+        writeByte(MAGIC);
+        writeValue(response);
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null || value.equals(null)) {
+            writeByte(NULL);
+        } else if (value instanceof StreamedJson) {
+            ((StreamedJson) value).writeBinary(this);
+        } else if (value instanceof JSONString) {
+            text.writeResponse(value);
+            transcode(text.array(), 0, text.size());
+        } else if (value instanceof JSONObject) {
+            writeObject((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray((JSONArray) value);
+        } else if (value instanceof Map) {
+            writeObject(new JSONObject((Map) value));
+        } else if (value instanceof Collection) {
+            writeArray(new JSONArray((Collection) value));
+        } else if (value.getClass().isArray()) {
+            writeArray(new JSONArray(value));
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeInt(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            writeByte(DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        } else if (value instanceof Number) {
+            writeByte(NUMBER);
+            writeString(JSONObject.numberToString((Number) value));
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else {
+            writeByte(STRING);
+            writeString(value.toString());
+        }
+    }
+
+    private void writeObject(JSONObject jsonObject) throws IOException {
+        writeByte(OBJECT);
+        for (String key : JsonOutput.keys(jsonObject)) {
+            writeKey(key);
+            writeValue(jsonObject.opt(key));
+        }
+        writeVarLong(0);
+    }
+
+    private void writeArray(JSONArray jsonArray) throws IOException {
+        writeByte(ARRAY);
+        for (int i = 0; i < jsonArray.length(); i++) {
+            writeValue(jsonArray.opt(i));
+        }
+        writeByte(END);
+    }
+
+    //// 0 ends the object, an odd code is the index of a key in KEYS and an even one the length + 1 of the key that follows
+    private void writeKey(String key) {
+        Integer index = KEY_INDEX.get(key);
+        if (index != null) {
+            writeVarLong((long) index << 1 | 1);
+            return;
+        }
+        byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+        writeVarLong((long) (utf8.length + 1) << 1);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    /**
+     * write a StreamedJson from its json text
+     *
+     * @param value the value
+     * @throws IOException the io exception
+     */
+    public void transcode(StreamedJson value) throws IOException {
+        text.writeResponse(value);
+        transcode(text.array(), 0, text.size());
+    }
+
+    private void writeInt(long number) {
+        writeByte(INT);
+        writeVarLong(number << 1 ^ number >> 63);
+    }
+
+    private void writeString(String string) {
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(utf8.length);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    /**
+     * write a json value of the text in the binary form
+     *
+     * @param json     the utf-8 json text
+     * @param position where the value starts
+     * @param limit    where the text ends
+     * @return where the value ends
+     */
+    private int transcode(byte[] json, int position, int limit) {
+        position = skipSpace(json, position, limit);
+        switch (json[position]) {
+            case '{':
+                writeByte(OBJECT);
+                position = skipSpace(json, position + 1, limit);
+                if (json[position] == '}') {
+                    writeVarLong(0);
+                    return position + 1;
+                }
+                while (true) {
+                    position = transcodeKey(json, skipSpace(json, position, limit));
+                    //// the colon
+                    position = skipSpace(json, position, limit) + 1;
+                    position = skipSpace(json, transcode(json, position, limit), limit);
+                    if (json[position++] == '}') {
+                        writeVarLong(0);
+                        return position;
+                    }
+                }
+            case '[':
+                writeByte(ARRAY);
+                position = skipSpace(json, position + 1, limit);
+                if (json[position] == ']') {
+                    writeByte(END);
+                    return position + 1;
+                }
+                while (true) {
+                    position = skipSpace(json, transcode(json, position, limit), limit);
+                    if (json[position++] == ']') {
+                        writeByte(END);
+                        return position;
+                    }
+                }
+            case '"':
+                writeByte(STRING);
+                int end = stringEnd(json, position + 1);
+                if (end < 0) {
+                    end = -end;
+                    writeString(unescape(json, position + 1, end));
+                } else {
+                    writeVarLong(end - position - 1);
+                    writeBytes(json, position + 1, end - position - 1);
+                }
+                return end + 1;
+            case 't':
+                writeByte(TRUE);
+                return position + 4;
+            case 'f':
+                writeByte(FALSE);
+                return position + 5;
+            case 'n':
+                writeByte(NULL);
+                return position + 4;
+            default:
+                int numberEnd = position;
+                while (numberEnd < limit && isNumberPart(json[numberEnd])) {
+                    numberEnd++;
+                }
+                transcodeNumber(json, position, numberEnd);
+                return numberEnd;
+        }
+    }
+
+    private int transcodeKey(byte[] json, int position) {
+        int start = position + 1;
+        int end = stringEnd(json, start);
+        if (end < 0) {
+            end = -end;
+            writeKey(unescape(json, start, end));
+            return end + 1;
+        }
+        //// the keys are compared in place instead of building a string
+        for (int index = 0; index < KEYS.length; index++) {
+            if (sameKey(KEYS[index], json, start, end)) {
+                writeVarLong((long) index << 1 | 1);
+                return end + 1;
+            }
+        }
+        writeVarLong((long) (end - start + 1) << 1);
+        writeBytes(json, start, end - start);
+        return end + 1;
+    }
+
+    //// a byte that is not ascii never equals a char, so a key that is not ascii is never matched here
+    private static boolean sameKey(String key, byte[] json, int start, int end) {
+        if (key.length() != end - start)
+            return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (json[start + i] != key.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    //// the integers that org.json reads as Integer or Long are varints, the others keep their text
+    private void transcodeNumber(byte[] json, int start, int end) {
+        boolean negative = json[start] == '-';
+        int first = negative ? start + 1 : start;
+        int digits = end - first;
+        boolean integral = digits > 0 && digits <= 18 && (json[first] != '0' || digits == 1);
+        long value = 0;
+        for (int i = first; integral && i < end; i++) {
+            int digit = json[i] - '0';
+            if (digit < 0 || digit > 9)
+                integral = false;
+            value = value * 10 + digit;
+        }
+        if (integral && !(negative && value == 0)) {
+            writeInt(negative ? -value : value);
+            return;
+        }
+        writeByte(NUMBER);
+        writeVarLong(end - start);
+        writeBytes(json, start, end - start);
+    }
+
+    /**
+     * find the closing quote of a string
+     *
+     * @param json  the json text
+     * @param start the first byte after the opening quote
+     * @return the index of the closing quote, negated when the string has escapes
+     */
+    private static int stringEnd(byte[] json, int start) {
+        boolean escaped = false;
+        int end = start;
+        while (json[end] != '"') {
+            if (json[end] == '\\') {
+                escaped = true;
+                end++;
+            }
+            end++;
+        }
+        return escaped ? -end : end;
+    }
+
+    private static String unescape(byte[] json, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        int position = start;
+        while (position < end) {
+            int escape = position;
+            while (escape < end && json[escape] != '\\') {
+                escape++;
+            }
+            builder.append(new String(json, position, escape - position, StandardCharsets.UTF_8));
+            if (escape == end)
+                break;
+            char c = (char) json[escape + 1];
+            position = escape + 2;
+            switch (c) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(new String(json, position, 4, StandardCharsets.US_ASCII), 16));
+                    position += 4;
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int skipSpace(byte[] json, int position, int limit) {
+        while (position < limit && json[position] <= ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isNumberPart(byte b) {
+        return b >= '0' && b <= '9' || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * copy a value that was written by a BinaryOutput before
+     *
+     * @param source the bytes
+     * @param offset the offset
+     * @param length the length
+     */
+    public void writeBytes(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+
+    private void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY)
+            bytes = new byte[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * the buffer, only the first size bytes are the message
+     *
+     * @return the bytes
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the number of bytes written
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,269 @@
+package org.ce.ap.protocol;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The type Json output.
+ * a reusable buffer that json is written to as utf-8 bytes, a connection keeps one and writes
+ * every response into it before it is framed. the text is the same as org.json's toString
+ * byte for byte, the StreamedJson values are written in place instead of as strings.
+ */
+public class JsonOutput extends Writer {
+    private static final int INITIAL_CAPACITY = 8192;
+    //// a buffer that grew for a large response is not kept for the next ones
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+    //// the first half of a surrogate pair that waits for its second half
+    private char highSurrogate;
+
+    /**
+     * write a response in the buffer, the previous content is dropped
+     *
+     * @param value the response
+     * @throws IOException the io exception
+     */
+    public void writeResponse(Object value) throws IOException {
+        reset();
+        writeValue(this, value);
+        flush();
+    }
+
+    /**
+     * Write a value the way JSONObject writes it.
+     *
+     * @param out   the writer
+     * @param value the value
+     * @throws IOException the io exception
+     */
+    public static void writeValue(Writer out, Object value) throws IOException {
+        if (value == null || value.equals(null)) {
+            out.write("null");
+        } else if (value instanceof StreamedJson) {
+            ((StreamedJson) value).writeJson(out);
+        } else if (value instanceof JSONObject) {
+            writeObject(out, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray(out, (JSONArray) value);
+        } else if (value instanceof Map) {
+            writeObject(out, new JSONObject((Map) value));
+        } else if (value instanceof Collection) {
+            writeArray(out, new JSONArray((Collection) value));
+        } else if (value.getClass().isArray()) {
+            writeArray(out, new JSONArray(value));
+        } else if (value instanceof Number) {
+            out.write(JSONObject.numberToString((Number) value));
+        } else if (value instanceof Boolean) {
+            out.write(value.toString());
+        } else if (value instanceof JSONString) {
+            String text = ((JSONString) value).toJSONString();
+            out.write(text != null ? text : JSONObject.quote(value.toString()));
+        } else {
+            JSONObject.quote(value.toString(), out);
+        }
+    }
+
+    private static void writeObject(Writer out, JSONObject jsonObject) throws IOException {
+        out.write('{');
+        boolean comma = false;
+        for (String key : keys(jsonObject)) {
+            if (comma)
+                out.write(',');
+            JSONObject.quote(key, out);
+            out.write(':');
+            writeValue(out, jsonObject.opt(key));
+            comma = true;
+        }
+        out.write('}');
+    }
+
+    private static void writeArray(Writer out, JSONArray jsonArray) throws IOException {
+        out.write('[');
+        for (int i = 0; i < jsonArray.length(); i++) {
+            if (i > 0)
+                out.write(',');
+            writeValue(out, jsonArray.opt(i));
+        }
+        out.write(']');
+    }
+
+    /**
+     * the keys of a json object in the order its toString writes them, the json and the binary
+     * writers both walk an object with this
+     *
+     * @param jsonObject the json object
+     * @return the keys
+     */
+    static Iterable<String> keys(JSONObject jsonObject) {
+        return () -> new Iterator<String>() {
+            //// org.json gives a raw iterator, its keys are strings
+            private final Iterator<?> keys = jsonObject.keys();
+
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return keys.next().toString();
+            }
+        };
+    }
+
+    /**
+     * the order JSONObject writes the keys in when they are put in the given order,
+     * the writers of the model classes use it to keep their text the same as toJson's
+     *
+     * @param keys the keys in the order they are put
+     * @return the keys in the order they are written
+     */
+    public static String[] keyOrder(String... keys) {
+        HashMap<String, Object> map = new HashMap<>();
+        for (String key : keys) {
+            map.put(key, key);
+        }
+        return map.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Write a string field name and its separator.
+     *
+     * @param out   the writer
+     * @param comma true if a field is written before this one
+     * @param key   the key
+     * @throws IOException the io exception
+     */
+    public static void writeKey(Writer out, boolean comma, String key) throws IOException {
+        if (comma)
+            out.write(',');
+        JSONObject.quote(key, out);
+        out.write(':');
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(string.charAt(i));
+        }
+    }
+
+    /**
+     * copy utf-8 text that was written by a JsonOutput before
+     *
+     * @param text   the bytes
+     * @param offset the offset
+     * @param length the length
+     */
+    public void writeBytes(byte[] text, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(text, offset, bytes, size, length);
+        size += length;
+    }
+
+    private void writeChar(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            //// String.getBytes writes a broken pair as '?'
+            writeChar('?');
+        }
+        if (c < 0x80) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeChar('?');
+        } else {
+            ensureCapacity(3);
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+
+    /**
+     * finish a broken surrogate pair at the end of the text
+     */
+    @Override
+    public void flush() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            writeChar('?');
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Drop the content.
+     */
+    public void reset() {
+        size = 0;
+        highSurrogate = 0;
+        if (bytes.length > MAX_RETAINED_CAPACITY)
+            bytes = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * the buffer, only its first size() bytes are the content
+     *
+     * @return the bytes
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the number of bytes written
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,53 @@
+package org.ce.ap.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * The type Message decoder.
+ * builds framed messages from partial reads of a non-blocking channel,
+ * it never holds more than one header and one message of at most the max size
+ */
+public class MessageDecoder {
+    private final int maxMessageSize;
+    private final ByteBuffer header = ByteBuffer.allocate(MessageFraming.HEADER_SIZE);
+    private byte[] message;
+    private int position;
+
+    /**
+     * Instantiates a new Message decoder.
+     *
+     * @param maxMessageSize the max message size
+     */
+    public MessageDecoder(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * consume bytes of the buffer until a message is complete or the buffer is empty
+     *
+     * @param buffer the read buffer
+     * @return the complete message or null if more bytes are needed
+     * @throws ProtocolException if the message is larger than the max size
+     */
+    public byte[] decode(ByteBuffer buffer) throws ProtocolException {
+        if (message == null) {
+            while (header.hasRemaining() && buffer.hasRemaining()) {
+                header.put(buffer.get());
+            }
+            if (header.hasRemaining())
+                return null;
+            message = new byte[MessageFraming.checkLength(header.getInt(0), maxMessageSize)];
+            position = 0;
+        }
+        int count = Math.min(buffer.remaining(), message.length - position);
+        buffer.get(message, position, count);
+        position += count;
+        if (position < message.length)
+            return null;
+        byte[] complete = message;
+        message = null;
+        header.clear();
+        return complete;
+    }
+}
@@ -0,0 +1,136 @@
+package org.ce.ap.protocol;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * The type Message deflater.
+ * the compressed messages of one connection. they are one deflate stream that is flushed at the end
+ * of every message, so a message is read with the ones before it as its dictionary and a timeline
+ * that repeats the tweets of the previous page costs little. a compressed message starts with MAGIC,
+ * the messages under the threshold are sent as they are
+ */
+public class MessageDeflater {
+    /**
+     * the first byte of every compressed message
+     */
+    public static final byte MAGIC = (byte) 0xB2;
+    private static final int INITIAL_CAPACITY = 8192;
+    //// a buffer that grew for a large message is not kept for the next ones
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final LongAdder MESSAGES = new LongAdder();
+    private static final LongAdder RAW_BYTES = new LongAdder();
+    private static final LongAdder COMPRESSED_BYTES = new LongAdder();
+    private static final LongAdder NANOS = new LongAdder();
+    private final Deflater deflater;
+    private final int threshold;
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Instantiates a new Message deflater.
+     *
+     * @param level     the deflate level
+     * @param threshold the smallest message that is compressed
+     */
+    public MessageDeflater(int level, int threshold) {
+        this.deflater = new Deflater(level, true);
+        this.threshold = threshold;
+    }
+
+    /**
+     * compress a message in the buffer, the messages must be compressed in the order they are sent
+     *
+     * @param message the message
+     * @param offset  the offset
+     * @param length  the length
+     * @return false if the message is under the threshold and is sent as it is
+     */
+    public boolean deflate(byte[] message, int offset, int length) {
+        if (length < threshold)
+            return false;
+        long start = System.nanoTime();
+        if (bytes.length > MAX_RETAINED_CAPACITY)
+            bytes = new byte[INITIAL_CAPACITY];
+        bytes[0] = MAGIC;
+        size = 1;
+        deflater.setInput(message, offset, length);
+        while (true) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            int free = bytes.length - size;
+            int written = deflater.deflate(bytes, size, free, Deflater.SYNC_FLUSH);
+            size += written;
+            //// a flush that did not fill the buffer is complete
+            if (written < free)
+                break;
+        }
+        MESSAGES.increment();
+        RAW_BYTES.add(length);
+        COMPRESSED_BYTES.add(size);
+        NANOS.add(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * the buffer, only the first size bytes are the compressed message
+     *
+     * @return the bytes
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the size of the compressed message
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * free the memory of the deflater, it is not used after this
+     */
+    public void end() {
+        deflater.end();
+    }
+
+    /**
+     * Gets compressed messages.
+     *
+     * @return the number of messages compressed by every connection
+     */
+    public static long getMessages() {
+        return MESSAGES.sum();
+    }
+
+    /**
+     * Gets raw bytes.
+     *
+     * @return the size of the compressed messages before they were compressed
+     */
+    public static long getRawBytes() {
+        return RAW_BYTES.sum();
+    }
+
+    /**
+     * Gets compressed bytes.
+     *
+     * @return the size of the compressed messages
+     */
+    public static long getCompressedBytes() {
+        return COMPRESSED_BYTES.sum();
+    }
+
+    /**
+     * Gets nanos.
+     *
+     * @return the time spent compressing
+     */
+    public static long getNanos() {
+        return NANOS.sum();
+    }
+}
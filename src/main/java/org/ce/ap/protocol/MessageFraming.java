@@ -0,0 +1,105 @@
+package org.ce.ap.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * The type Message framing.
+ * every message on the socket is a 4 byte big endian length followed by that many bytes of utf-8 json
+ */
+public class MessageFraming {
+    /**
+     * The size of the length header.
+     */
+    public static final int HEADER_SIZE = 4;
+    /**
+     * The default max message size.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private MessageFraming() {
+    }
+
+    /**
+     * Write a message and flush the stream.
+     *
+     * @param out     the output stream, it should be buffered
+     * @param message the message
+     * @throws IOException the io exception
+     */
+    public static void writeMessage(OutputStream out, byte[] message) throws IOException {
+        writeMessage(out, message, 0, message.length);
+    }
+
+    /**
+     * Write a part of an array as a message and flush the stream.
+     *
+     * @param out     the output stream, it should be buffered
+     * @param message the array that holds the message
+     * @param offset  the offset of the message
+     * @param length  the length of the message
+     * @throws IOException the io exception
+     */
+    public static void writeMessage(OutputStream out, byte[] message, int offset, int length) throws IOException {
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(message, offset, length);
+        out.flush();
+    }
+
+    /**
+     * Read a whole message.
+     *
+     * @param in             the input stream
+     * @param maxMessageSize the max message size
+     * @return the message or null if the stream is closed before a new message
+     * @throws IOException if the stream ends in the middle of a message or the message is too large
+     */
+    public static byte[] readMessage(InputStream in, int maxMessageSize) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = in.readNBytes(header, 0, HEADER_SIZE);
+        if (read == 0)
+            return null;
+        if (read < HEADER_SIZE)
+            throw new ProtocolException("connection closed inside a message header");
+        int length = checkLength(ByteBuffer.wrap(header).getInt(), maxMessageSize);
+        byte[] message = new byte[length];
+        if (in.readNBytes(message, 0, length) < length)
+            throw new ProtocolException("connection closed inside a message");
+        return message;
+    }
+
+    /**
+     * make the frame of a message for channel writes
+     *
+     * @param message the message
+     * @param length  the length of the message
+     * @return the frame
+     */
+    public static ByteBuffer frame(byte[] message, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+        frame.putInt(length);
+        frame.put(message, 0, length);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Check length.
+     *
+     * @param length         the length from the header
+     * @param maxMessageSize the max message size
+     * @return the length
+     * @throws ProtocolException if the length is negative or greater than the max size
+     */
+    static int checkLength(int length, int maxMessageSize) throws ProtocolException {
+        if (length < 0 || length > maxMessageSize)
+            throw new ProtocolException("invalid message length " + length);
+        return length;
+    }
+}
@@ -0,0 +1,71 @@
+package org.ce.ap.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The type Message inflater.
+ * reads the compressed messages of one connection, in the order they came, see MessageDeflater
+ */
+public class MessageInflater {
+    private final Inflater inflater = new Inflater(true);
+    private final int maxMessageSize;
+    private byte[] bytes = new byte[8192];
+
+    /**
+     * Instantiates a new Message inflater.
+     *
+     * @param maxMessageSize the largest message it gives back
+     */
+    public MessageInflater(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * whether a message is compressed
+     *
+     * @param message the message
+     * @return true if it starts with the magic byte
+     */
+    public static boolean isCompressed(byte[] message) {
+        return message.length > 0 && message[0] == MessageDeflater.MAGIC;
+    }
+
+    /**
+     * Inflate a message.
+     *
+     * @param message the compressed message
+     * @return the message
+     * @throws IOException if the message is broken or larger than the max message size
+     */
+    public byte[] inflate(byte[] message) throws IOException {
+        inflater.setInput(message, 1, message.length - 1);
+        int size = 0;
+        try {
+            while (true) {
+                if (size == bytes.length) {
+                    if (bytes.length >= maxMessageSize)
+                        throw new IOException("a message is larger than " + maxMessageSize + " bytes");
+                    bytes = Arrays.copyOf(bytes, (int) Math.min((long) bytes.length * 2, maxMessageSize));
+                }
+                int read = inflater.inflate(bytes, size, bytes.length - size);
+                size += read;
+                //// the message ends where the input does, a flush leaves nothing in the inflater
+                if (read == 0 && (inflater.needsInput() || inflater.finished()))
+                    break;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * free the memory of the inflater, it is not used after this
+     */
+    public void end() {
+        inflater.end();
+    }
+}
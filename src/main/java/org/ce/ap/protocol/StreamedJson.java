@@ -0,0 +1,49 @@
+package org.ce.ap.protocol;
+
+import org.json.JSONString;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * The interface Streamed json.
+ * a value that writes its json text itself instead of building a JSONObject tree, it can be
+ * put in a JSONObject or JSONArray like any value and JsonOutput streams it in place
+ */
+public interface StreamedJson extends JSONString {
+    /**
+     * Write the json text.
+     *
+     * @param out the writer
+     * @throws IOException the io exception
+     */
+    void writeJson(Writer out) throws IOException;
+
+    /**
+     * Write the binary form, by default it is read from the json text.
+     *
+     * @param out the binary output
+     * @throws IOException the io exception
+     */
+    default void writeBinary(BinaryOutput out) throws IOException {
+        out.transcode(this);
+    }
+
+    /**
+     * the json text as a string, it is used when the value is printed by org.json itself
+     *
+     * @return the json text
+     */
+    @Override
+    default String toJSONString() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -1,15 +1,30 @@
 package  org.ce.ap.server.DataBase;
 
 import  org.ce.ap.server.ServerConfig;
-import org.json.JSONObject;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The type Log data base.
+ * the request threads only put their lines in a bounded buffer, one background thread
+ * writes them to the file in batches and rotates the file by size and by time. the lines
+ * of one request are one entry of the buffer, they are written or dropped together
  */
 public class LogDataBase {
+    private static final Appender APPENDER = new Appender();
+    //// the lines of the request this thread is processing, null outside of a request
+    private static final ThreadLocal<StringBuilder> REQUEST = new ThreadLocal<>();
     private Path path;
 
     /**
@@ -19,20 +34,40 @@ public class LogDataBase {
         this.path = Path.of(ServerConfig.getProperty("server.log.file"));
     }
 
+    /**
+     * the lines this thread writes until endRequest are kept and put in the buffer as one
+     * entry, so the attempt and the result of a request are never split
+     */
+    public void beginRequest() {
+        REQUEST.set(new StringBuilder());
+    }
+
+    /**
+     * put the lines of the request in the buffer
+     */
+    public void endRequest() {
+        StringBuilder lines = REQUEST.get();
+        REQUEST.remove();
+        if (lines != null && lines.length() > 0)
+            APPENDER.append(lines.toString());
+    }
+
     /**
      * Write log file.
+     * in a request the line waits for its end, otherwise it is put in the buffer at once. an
+     * entry is dropped if the buffer is full, the number of dropped lines is written later
      *
      * @param state    the state
      * @param username the username
      * @param detail   the detail
      */
     public void writeLogFile(boolean state, String username, String detail) {
-        String file = readLogFile();
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(path.toFile().getAbsoluteFile() + File.separator + "log"))) {
-            out.write(file + attempt(detail, username, state));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        String line = attempt(detail, username, state);
+        StringBuilder lines = REQUEST.get();
+        if (lines != null)
+            lines.append(line);
+        else
+            APPENDER.append(line);
     }
 
     /**
@@ -41,18 +76,20 @@ public class LogDataBase {
      * @return the string
      */
     public String readLogFile() {
-        StringBuilder fileStr = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(path + File.separator + "log"))) {
-            int count;
-            char[] buffer = new char[20];
-            while (reader.ready()) {
-                count = reader.read(buffer);
-                fileStr.append(new String(buffer, 0, count));
-            }
+        try {
+            return new String(Files.readAllBytes(path.resolve("log")), StandardCharsets.UTF_8);
         } catch (IOException e) {
             return "";
         }
-        return fileStr.toString();
+    }
+
+    /**
+     * Gets dropped lines.
+     *
+     * @return the number of lines dropped because the buffer was full
+     */
+    public static long getDroppedLines() {
+        return APPENDER.dropped.get();
     }
 
     /**
@@ -72,4 +109,160 @@ public class LogDataBase {
         }
         return str;
     }
+
+    /**
+     * The type Appender.
+     * owns the log file, only its thread writes to it
+     */
+    private static class Appender implements Runnable {
+        private final Path directory;
+        private final Path file;
+        private final boolean override;
+        private final long maxSize;
+        private final long rotateInterval;
+        private final long flushInterval;
+        private final int batchSize;
+        private final ArrayBlockingQueue<String> buffer;
+        private final AtomicLong dropped = new AtomicLong();
+        private long reportedDropped;
+        private OutputStream out;
+        private long size;
+        private long openedAt;
+
+        /**
+         * Instantiates a new Appender and starts its thread.
+         */
+        Appender() {
+            directory = Path.of(ServerConfig.getProperty("server.log.file"));
+            file = directory.resolve("log");
+            override = Boolean.parseBoolean(ServerConfig.getProperty("server.log.override").trim());
+            maxSize = Long.parseLong(ServerConfig.getProperty("server.log.max-size"));
+            rotateInterval = TimeUnit.MINUTES.toMillis(Long.parseLong(ServerConfig.getProperty("server.log.rotate-minutes")));
+            flushInterval = Long.parseLong(ServerConfig.getProperty("server.log.flush-millis"));
+            int capacity = Integer.parseInt(ServerConfig.getProperty("server.log.buffer-size"));
+            batchSize = Math.max(1, capacity / 4);
+            buffer = new ArrayBlockingQueue<>(capacity);
+            Thread thread = new Thread(this, "log-appender");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flushRemaining, "log-appender-shutdown"));
+        }
+
+        /**
+         * put an entry in the buffer without waiting, all its lines are dropped if it is full
+         *
+         * @param lines the lines of the entry, each ends with a new line
+         */
+        void append(String lines) {
+            if (buffer.offer(lines))
+                return;
+            int count = 0;
+            for (int i = 0; i < lines.length(); i++) {
+                if (lines.charAt(i) == '\n')
+                    count++;
+            }
+            dropped.addAndGet(count);
+        }
+
+        @Override
+        public void run() {
+            ArrayList<String> batch = new ArrayList<>(batchSize);
+            while (true) {
+                try {
+                    String first = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        rotateIfNeeded();
+                        continue;
+                    }
+                    batch.add(first);
+                    buffer.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    batch.clear();
+                    closeQuietly();
+                }
+            }
+        }
+
+        /**
+         * write a batch of entries with one write call
+         *
+         * @param batch the entries
+         * @throws IOException the io exception
+         */
+        private synchronized void write(ArrayList<String> batch) throws IOException {
+            rotateIfNeeded();
+            StringBuilder lines = new StringBuilder();
+            long droppedNow = dropped.get();
+            if (droppedNow != reportedDropped) {
+                lines.append("[ERROR] Server, -").append(droppedNow - reportedDropped).append(" log lines dropped\n");
+                reportedDropped = droppedNow;
+            }
+            for (String line : batch) {
+                lines.append(line);
+            }
+            byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            out.flush();
+            size += bytes.length;
+        }
+
+        /**
+         * open the file at the first write and move it away when it is too big or too old,
+         * with server.log.override the old file is replaced by the new one at start and at
+         * rotation, otherwise it is kept with the time of the rotation in its name
+         *
+         * @throws IOException the io exception
+         */
+        private synchronized void rotateIfNeeded() throws IOException {
+            if (out != null) {
+                boolean tooBig = size >= maxSize;
+                boolean tooOld = size > 0 && System.currentTimeMillis() - openedAt >= rotateInterval;
+                if (!tooBig && !tooOld)
+                    return;
+                closeQuietly();
+                moveAway();
+            } else if (openedAt == 0 && override) {
+                moveAway();
+            }
+            Files.createDirectories(directory);
+            out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            size = Files.size(file);
+            openedAt = System.currentTimeMillis();
+        }
+
+        private void moveAway() throws IOException {
+            if (!Files.exists(file))
+                return;
+            String suffix = override ? "old" : LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Files.move(file, directory.resolve("log." + suffix), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private synchronized void flushRemaining() {
+            ArrayList<String> batch = new ArrayList<>();
+            buffer.drainTo(batch);
+            if (batch.isEmpty())
+                return;
+            try {
+                write(batch);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void closeQuietly() {
+            if (out == null)
+                return;
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
 }
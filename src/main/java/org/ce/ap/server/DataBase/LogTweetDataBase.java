@@ -0,0 +1,773 @@
+package  org.ce.ap.server.DataBase;
+
+import  org.ce.ap.server.ServerConfig;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The type Log tweet data base.
+ * an append only log of tweet records split into segments, a new tweet is written whole
+ * and every later change is a small delta record. when enough segments are closed they
+ * are compacted into one segment that starts with a BASE record. only the positions of the
+ * records are kept in memory, a tweet is read back from its records when it is asked for.
+ * the index is written to a snapshot so a start only indexes the log written after it.
+ */
+public class LogTweetDataBase implements TweetDataBase {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    //// a record position is its segment's sequence in the high bits and its offset in the low ones
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int SNAPSHOT_VERSION = 1;
+    //// the snapshot keeps a checksum of the start of each segment to know it is the same file
+    private static final int CHECKED_PREFIX = 4096;
+    private final SnapshotDataBase snapshot = new SnapshotDataBase("tweets.snapshot", SNAPSHOT_VERSION);
+    private Path path;
+    private final long segmentSize;
+    private final int compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tweet-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //// sequence numbers of the closed segments that are not compacted yet
+    private final ArrayList<Long> closedSegments = new ArrayList<>();
+    //// the records of every tweet from its last PUT record
+    private final HashMap<Long, Records> index = new HashMap<>();
+    //// the segments stay open for the readers, they read outside the lock
+    private final HashMap<Long, FileChannel> readers = new HashMap<>();
+    //// one string for each author instead of one for each tweet
+    private final HashMap<String, String> authors = new HashMap<>();
+    private OutputStream active;
+    private long activeSequence;
+    private long activeSize;
+    private boolean compacting;
+    //// a lock instead of a monitor, a virtual thread that waits for it leaves its carrier free
+    private final ReentrantLock lock = new ReentrantLock();
+    //// the records of a batch are flushed together when it ends
+    private final ThreadLocal<Boolean> batching = ThreadLocal.withInitial(() -> false);
+    private boolean unflushed;
+
+    /**
+     * Instantiates a new Log tweet data base.
+     */
+    public LogTweetDataBase() {
+        path = Path.of(ServerConfig.getProperty("server.tweets.file"));
+        segmentSize = Long.parseLong(ServerConfig.getProperty("server.tweets.segment-size"));
+        compactionThreshold = Integer.parseInt(ServerConfig.getProperty("server.tweets.compaction-threshold"));
+    }
+
+    /**
+     * index the log from the snapshot or from the start, it should be called once before the first write
+     *
+     * @return the header of every tweet
+     */
+    @Override
+    public ArrayList<TweetHeader> readIndex() {
+        lock.lock();
+        try {
+            TreeMap<Long, Path> segments = segments();
+            if (!readSnapshot(segments)) {
+                for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                    index(segment.getKey(), segment.getValue(), 0);
+                }
+            }
+            closedSegments.addAll(segments.keySet());
+            activeSequence = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+            if (segments.isEmpty())
+                importTweetFiles();
+            ArrayList<TweetHeader> headers = new ArrayList<>(index.size());
+            for (Records records : index.values()) {
+                headers.add(records.header);
+            }
+            return headers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * write the index to the snapshot
+     */
+    @Override
+    public void writeSnapshot() {
+        long sequence;
+        long size;
+        long[][] checks;
+        TweetHeader[] headers;
+        long[][] positions;
+        //// the positions are copied together with the segments they point to
+        lock.lock();
+        try {
+            sequence = activeSequence;
+            size = activeSize;
+            ArrayList<Long> sequences = new ArrayList<>(closedSegments);
+            if (activeSize > 0)
+                sequences.add(activeSequence);
+            checks = new long[sequences.size()][];
+            try {
+                flushActive();
+                for (int i = 0; i < sequences.size(); i++) {
+                    long segment = sequences.get(i);
+                    long length = segment == activeSequence ? activeSize : Files.size(segmentPath(segment));
+                    checks[i] = new long[]{segment, length, checksum(segmentPath(segment), length)};
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            headers = new TweetHeader[index.size()];
+            positions = new long[index.size()][];
+            int i = 0;
+            for (Records records : index.values()) {
+                headers[i] = records.header;
+                positions[i] = Arrays.copyOf(records.positions, 2 * records.size);
+                i++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        HashMap<String, Integer> authorIndexes = new HashMap<>();
+        for (TweetHeader header : headers) {
+            authorIndexes.putIfAbsent(header.getAuthor(), authorIndexes.size());
+        }
+        snapshot.write(out -> {
+            out.writeLong(sequence);
+            out.writeLong(size);
+            out.writeInt(checks.length);
+            for (long[] check : checks) {
+                out.writeLong(check[0]);
+                out.writeLong(check[1]);
+                out.writeLong(check[2]);
+            }
+            String[] authorNames = new String[authorIndexes.size()];
+            for (Map.Entry<String, Integer> author : authorIndexes.entrySet()) {
+                authorNames[author.getValue()] = author.getKey();
+            }
+            out.writeInt(authorNames.length);
+            for (String author : authorNames) {
+                SnapshotDataBase.writeString(out, author);
+            }
+            out.writeInt(headers.length);
+            for (int i = 0; i < headers.length; i++) {
+                out.writeLong(headers[i].getId());
+                out.writeInt(authorIndexes.get(headers[i].getAuthor()));
+                out.writeLong(headers[i].getSendDate().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(headers[i].getSendDate().getNano());
+                out.writeInt(positions[i].length / 2);
+                for (long position : positions[i]) {
+                    out.writeLong(position);
+                }
+            }
+        });
+    }
+
+    /**
+     * read the index from the snapshot and index the log written after it, a snapshot is not
+     * used if a segment it knows was compacted or changed since
+     *
+     * @param segments the segments
+     * @return false if the whole log should be indexed
+     */
+    private boolean readSnapshot(TreeMap<Long, Path> segments) {
+        ByteBuffer buffer = snapshot.read();
+        if (buffer == null)
+            return false;
+        long sequence;
+        long size;
+        try {
+            sequence = buffer.getLong();
+            size = buffer.getLong();
+            int segmentCount = buffer.getInt();
+            HashSet<Long> checked = new HashSet<>();
+            for (int i = 0; i < segmentCount; i++) {
+                long segment = buffer.getLong();
+                long length = buffer.getLong();
+                long checksum = buffer.getLong();
+                Path segmentPath = segments.get(segment);
+                if (segmentPath == null || Files.size(segmentPath) < length
+                        || (segment != sequence && Files.size(segmentPath) != length)
+                        || checksum(segmentPath, length) != checksum)
+                    return stale();
+                checked.add(segment);
+            }
+            for (long segment : segments.headMap(sequence, true).keySet()) {
+                if (!checked.contains(segment) && !(segment == sequence && size == 0))
+                    return stale();
+            }
+            String[] authorNames = new String[buffer.getInt()];
+            for (int i = 0; i < authorNames.length; i++) {
+                authorNames[i] = SnapshotDataBase.readString(buffer);
+                authors.put(authorNames[i], authorNames[i]);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                String author = authorNames[buffer.getInt()];
+                LocalDateTime sendDate = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+                long[] positions = new long[2 * buffer.getInt()];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = buffer.getLong();
+                }
+                index.put(id, new Records(new TweetHeader(id, author, sendDate), positions));
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return stale();
+        }
+        if (segments.containsKey(sequence))
+            index(sequence, segments.get(sequence), size);
+        for (Map.Entry<Long, Path> segment : segments.tailMap(sequence, false).entrySet()) {
+            index(segment.getKey(), segment.getValue(), 0);
+        }
+        System.out.println("tweet index read from the snapshot");
+        return true;
+    }
+
+    private boolean stale() {
+        System.out.println("the tweet snapshot does not match the log, the whole log is indexed");
+        index.clear();
+        authors.clear();
+        return false;
+    }
+
+    /**
+     * Checksum of the start of a segment.
+     *
+     * @param segment the segment
+     * @param length  the length of the segment that is known
+     * @return the checksum
+     * @throws IOException the io exception
+     */
+    private long checksum(Path segment, long length) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(length, CHECKED_PREFIX));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            while (prefix.hasRemaining()) {
+                if (channel.read(prefix, prefix.position()) == -1)
+                    break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix.array(), 0, prefix.position());
+        return crc.getValue();
+    }
+
+    /**
+     * read a tweet back from its records, the lock is held only to copy their positions
+     *
+     * @param id the id
+     * @return the current json of the tweet or null if there is no such tweet
+     */
+    @Override
+    public JSONObject read(long id) {
+        for (int attempt = 0; ; attempt++) {
+            long[] positions;
+            FileChannel[] channels;
+            lock.lock();
+            try {
+                Records records = index.get(id);
+                if (records == null)
+                    return null;
+                if (unflushed)
+                    flushActive();
+                positions = Arrays.copyOf(records.positions, 2 * records.size);
+                channels = new FileChannel[records.size];
+                for (int i = 0; i < channels.length; i++) {
+                    channels[i] = channel(positions[2 * i] >>> OFFSET_BITS);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                HashMap<Long, JSONObject> tweets = new HashMap<>();
+                for (int i = 0; i < channels.length; i++) {
+                    long position = positions[2 * i];
+                    ByteBuffer line = ByteBuffer.allocate((int) positions[2 * i + 1]);
+                    while (line.hasRemaining()) {
+                        if (channels[i].read(line, (position & OFFSET_MASK) + line.position()) == -1)
+                            throw new EOFException("a record of tweet " + id + " is cut");
+                    }
+                    TweetRecords.apply(new JSONObject(new String(line.array(), StandardCharsets.UTF_8)), tweets);
+                }
+                return tweets.get(id);
+            } catch (ClosedChannelException e) {
+                //// a compaction closed the segment, the index has the records of the new one
+                if (attempt > 0) {
+                    e.printStackTrace();
+                    return null;
+                }
+            } catch (IOException | JSONException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * the open channel of a segment, it is called with the lock held
+     *
+     * @param sequence the sequence of the segment
+     * @return the channel
+     * @throws IOException the io exception
+     */
+    private FileChannel channel(long sequence) throws IOException {
+        FileChannel channel = readers.get(sequence);
+        //// an interrupted reader closes the channel it was reading
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ);
+            readers.put(sequence, channel);
+        }
+        return channel;
+    }
+
+    private void closeReader(long sequence) {
+        FileChannel channel = readers.remove(sequence);
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write file.
+     *
+     * @param id         the id
+     * @param username   the username
+     * @param jsonObject the json object
+     */
+    @Override
+    public void writeFile(String id, String username, JSONObject jsonObject) {
+        append(TweetRecords.put(Long.parseLong(id), jsonObject));
+    }
+
+    /**
+     * Remove file.
+     *
+     * @param id       the id
+     * @param username the username
+     */
+    @Override
+    public void removeFile(String id, String username) {
+        append(TweetRecords.remove(Long.parseLong(id)));
+    }
+
+    /**
+     * Append like.
+     *
+     * @param id       the id of the tweet
+     * @param username the liker
+     * @param state    true for like and false for dislike
+     */
+    @Override
+    public void appendLike(long id, String username, boolean state) {
+        append(TweetRecords.like(id, username, state));
+    }
+
+    /**
+     * Append reply.
+     *
+     * @param id    the id of the replied tweet
+     * @param reply the reply json
+     */
+    @Override
+    public void appendReply(long id, JSONObject reply) {
+        append(TweetRecords.reply(id, reply));
+    }
+
+    /**
+     * Append remove reply.
+     *
+     * @param id      the id of the replied tweet
+     * @param replyId the reply id
+     */
+    @Override
+    public void appendRemoveReply(long id, long replyId) {
+        append(TweetRecords.removeReply(id, replyId));
+    }
+
+    /**
+     * Append retweet.
+     *
+     * @param id      the id of the retweeted tweet
+     * @param retweet the retweet summary json
+     */
+    @Override
+    public void appendRetweet(long id, JSONObject retweet) {
+        append(TweetRecords.retweet(id, retweet));
+    }
+
+    /**
+     * Append remove retweet.
+     *
+     * @param id        the id of the retweeted tweet
+     * @param retweetId the retweet id
+     */
+    @Override
+    public void appendRemoveRetweet(long id, long retweetId) {
+        append(TweetRecords.removeRetweet(id, retweetId));
+    }
+
+    /**
+     * the records this thread appends until endBatch are flushed once at its end
+     */
+    @Override
+    public void beginBatch() {
+        batching.set(true);
+    }
+
+    /**
+     * flush the records of the batch
+     */
+    @Override
+    public void endBatch() {
+        batching.set(false);
+        lock.lock();
+        try {
+            if (unflushed)
+                flushActive();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * write a record at the end of the active segment and roll it when it is full
+     *
+     * @param record the record
+     */
+    private void append(JSONObject record) {
+        lock.lock();
+        try {
+            byte[] line = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                if (active == null) {
+                    Files.createDirectories(path);
+                    active = new BufferedOutputStream(Files.newOutputStream(segmentPath(activeSequence),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+                }
+                active.write(line);
+                if (batching.get())
+                    unflushed = true;
+                else
+                    flushActive();
+                locate(record, position(activeSequence, activeSize), line.length - 1);
+                activeSize += line.length;
+                if (activeSize >= segmentSize)
+                    roll();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * write what is left in the buffer of the active segment, the readers of the file need it
+     *
+     * @throws IOException the io exception
+     */
+    private void flushActive() throws IOException {
+        if (active != null)
+            active.flush();
+        unflushed = false;
+    }
+
+    private void roll() throws IOException {
+        unflushed = false;
+        active.close();
+        active = null;
+        closedSegments.add(activeSequence);
+        activeSequence++;
+        activeSize = 0;
+        if (!compacting && closedSegments.size() >= compactionThreshold) {
+            compacting = true;
+            ArrayList<Long> segments = new ArrayList<>(closedSegments);
+            compactor.execute(() -> compact(segments));
+        }
+    }
+
+    /**
+     * fold the closed segments into the last one of them, the records of the
+     * active segment are not touched so the writers never wait for it
+     *
+     * @param segments the closed segments in order
+     */
+    private void compact(ArrayList<Long> segments) {
+        long last = segments.get(segments.size() - 1);
+        Path compacted = path.resolve(SEGMENT_PREFIX + last + ".compact");
+        try {
+            HashMap<Long, JSONObject> tweets = new HashMap<>();
+            for (long sequence : segments) {
+                replay(segmentPath(sequence), tweets);
+            }
+            HashMap<Long, long[]> positions = new HashMap<>();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted))) {
+                long offset = writeLine(out, TweetRecords.base());
+                for (Long id : tweets.keySet()) {
+                    long length = writeLine(out, TweetRecords.put(id, tweets.get(id)));
+                    positions.put(id, new long[]{position(last, offset), length - 1});
+                    offset += length;
+                }
+            }
+            //// the files and the positions change together so a reader never sees one without the other
+            lock.lock();
+            try {
+                Files.move(compacted, segmentPath(last), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (long sequence : segments) {
+                    //// a reader still in a replaced file fails on its closed channel and reads again
+                    closeReader(sequence);
+                    if (sequence != last)
+                        Files.deleteIfExists(segmentPath(sequence));
+                }
+                for (Map.Entry<Long, Records> entry : index.entrySet()) {
+                    entry.getValue().compacted(last, positions.get(entry.getKey()));
+                }
+                closedSegments.removeAll(segments);
+                closedSegments.add(0, last);
+            } finally {
+                lock.unlock();
+            }
+            System.out.println("tweet log compacted into " + segmentPath(last).getFileName());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.lock();
+            try {
+                compacting = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long writeLine(OutputStream out, JSONObject record) throws IOException {
+        byte[] line = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(line);
+        return line.length;
+    }
+
+    private static long position(long sequence, long offset) {
+        return sequence << OFFSET_BITS | offset;
+    }
+
+    /**
+     * keep the position of a record in the index
+     *
+     * @param record   the record
+     * @param position the position
+     * @param length   the length without the line break
+     */
+    private void locate(JSONObject record, long position, int length) {
+        long id = record.getLong("id");
+        switch (record.getString("op")) {
+            case "BASE":
+                index.clear();
+                break;
+            case "PUT":
+                index.put(id, new Records(header(id, record.getJSONObject("tweet")), new long[]{position, length}));
+                break;
+            case "REMOVE":
+                index.remove(id);
+                break;
+            default:
+                Records records = index.get(id);
+                if (records != null)
+                    records.add(position, length);
+        }
+    }
+
+    /**
+     * index the records of a segment, a broken last line of a crashed write is skipped
+     *
+     * @param sequence the sequence of the segment
+     * @param segment  the segment
+     * @param first    the offset of the first record to index
+     */
+    private void index(long sequence, Path segment, long first) {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+             InputStream in = Channels.newInputStream(channel.position(first))) {
+            byte[] buffer = new byte[64 * 1024];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = first;
+            long start = first;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n')
+                        continue;
+                    line.write(buffer, from, i - from);
+                    indexRecord(segment, position(sequence, start), line);
+                    line.reset();
+                    from = i + 1;
+                    start = offset + from;
+                }
+                line.write(buffer, from, read - from);
+                offset += read;
+            }
+            indexRecord(segment, position(sequence, start), line);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void indexRecord(Path segment, long position, ByteArrayOutputStream line) {
+        if (line.size() == 0)
+            return;
+        try {
+            locate(new JSONObject(line.toString(StandardCharsets.UTF_8)), position, line.size());
+        } catch (JSONException e) {
+            System.err.println("skip broken record in " + segment.getFileName());
+        }
+    }
+
+    private TweetHeader header(long id, JSONObject tweet) {
+        tweet = TweetRecords.own(tweet);
+        String author = authors.computeIfAbsent(tweet.getString("author"), username -> username);
+        return new TweetHeader(id, author, TweetRecords.sendDate(tweet));
+    }
+
+    /**
+     * apply the records of a segment, a broken last line of a crashed write is skipped
+     *
+     * @param segment the segment
+     * @param tweets  the tweets by id
+     */
+    private void replay(Path segment, HashMap<Long, JSONObject> tweets) {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                try {
+                    TweetRecords.apply(new JSONObject(line), tweets);
+                } catch (JSONException e) {
+                    System.err.println("skip broken record in " + segment.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * the first start after the one file per tweet storage imports those files into the log
+     *
+     * @param tweets the tweets by id
+     */
+    private void importTweetFiles() {
+        if (!Files.isDirectory(path))
+            return;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
+            for (Path p : directoryStream) {
+                String[] words = p.getFileName().toString().split("\\s");
+                if (words.length != 2)
+                    continue;
+                JSONObject tweet = new JSONObject(new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+                writeFile(words[0], words[1], tweet);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        System.out.println(index.size() + " tweet files imported into the log");
+    }
+
+    private TreeMap<Long, Path> segments() {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path p : directoryStream) {
+                    String name = p.getFileName().toString();
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), p);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(long sequence) {
+        return path.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * The type Records.
+     * the position and length of each record of a tweet in the order they are applied
+     */
+    private static class Records {
+        private final TweetHeader header;
+        private long[] positions;
+        private int size;
+
+        private Records(TweetHeader header, long[] positions) {
+            this.header = header;
+            this.positions = positions;
+            this.size = positions.length / 2;
+        }
+
+        private void add(long position, int length) {
+            if (2 * size == positions.length)
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            positions[2 * size] = position;
+            positions[2 * size + 1] = length;
+            size++;
+        }
+
+        /**
+         * the records in the compacted segments are replaced by the one PUT record they became
+         *
+         * @param last      the sequence of the compacted segment
+         * @param compacted the position and length of the PUT record or null
+         */
+        private void compacted(long last, long[] compacted) {
+            int dropped = 0;
+            while (dropped < size && positions[2 * dropped] >>> OFFSET_BITS <= last) {
+                dropped++;
+            }
+            if (dropped == 0)
+                return;
+            int from = 2 * dropped;
+            int to = compacted == null ? 0 : 2;
+            System.arraycopy(positions, from, positions, to, 2 * size - from);
+            if (compacted != null) {
+                positions[0] = compacted[0];
+                positions[1] = compacted[1];
+            }
+            size = size - dropped + to / 2;
+        }
+    }
+}
@@ -0,0 +1,700 @@
+package  org.ce.ap.server.DataBase;
+
+import  org.ce.ap.server.ServerConfig;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The type Mapped tweet data base.
+ * the tweets are kept in two memory mapped files : an index of fixed width slots with the id,
+ * author, send date and heap place of every tweet, and a heap with the json of its text, likes,
+ * replies and retweets. a like, reply or retweet writes only its record at the end of the heap,
+ * linked to the records before it and the json of the tweet, so a change costs the size of the
+ * change. a read copies the tweet and its records out of the mapped pages under a read lock and
+ * applies them outside it, and once the records are larger than the json the tweet is written
+ * again as one json. the old copies are dropped by a compaction when they are most of the heap,
+ * at start or while the server runs. the tweets do not need to fit in the java heap
+ */
+public class MappedTweetDataBase implements TweetDataBase {
+    private static final String PREFIX = "mapped-";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String HEAP_SUFFIX = ".heap";
+    private static final String AUTHORS = "mapped.authors";
+    private static final int MAGIC = 0x54574958;
+    private static final int VERSION = 2;
+    //// the files of the first version have no records, the unused bytes of their slots are 0
+    private static final int FIRST_VERSION = 1;
+    //// the files are mapped in regions of this size, a slot or a tweet never crosses two regions
+    private static final int REGION_SIZE = 1 << 26;
+    //// id, author ordinal, length, send date seconds and nanos, record count and heap offset of a tweet
+    private static final int SLOT_SIZE = 40;
+    private static final int SLOTS_PER_REGION = REGION_SIZE / SLOT_SIZE;
+    private static final int AUTHOR = 8;
+    private static final int LENGTH = 12;
+    private static final int SECONDS = 16;
+    private static final int NANOS = 24;
+    private static final int RECORDS = 28;
+    private static final int OFFSET = 32;
+    //// the length in the slot of a removed tweet
+    private static final int REMOVED = -1;
+    //// a record in the heap starts with the offset of the entry before it, its length and the
+    //// length of the json of the tweet, the length in the slot is the json and all its records
+    private static final int RECORD_HEADER = 16;
+    //// the records of a tweet are applied and it is written again when they are larger than this and the json
+    private static final int MIN_RECORD_BYTES = 4096;
+    //// the heap is compacted when more than this part of it is old copies
+    private static final double MAX_GARBAGE = 0.5;
+    //// a smaller heap is only compacted at start
+    private static final long MIN_COMPACT_SIZE = 1 << 24;
+    private final Path path;
+    //// the slot of every tweet, slot 0 is the header with the slot count and the end of the heap
+    private HashMap<Long, Integer> slots = new HashMap<>();
+    private final ArrayList<String> authorNames = new ArrayList<>();
+    private final HashMap<String, Integer> authorOrdinals = new HashMap<>();
+    private long generation;
+    private MappedFile index;
+    private MappedFile heap;
+    private int slotCount;
+    private long heapEnd;
+    private long liveSize;
+    //// the slots and the mapped files, a read copies bytes under the read lock and a change
+    //// takes the write lock only to place its bytes and point the slot to them
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Instantiates a new Mapped tweet data base.
+     */
+    public MappedTweetDataBase() {
+        path = Path.of(ServerConfig.getProperty("server.tweets.file"));
+    }
+
+    /**
+     * map the files and read the header of every tweet from its slot
+     *
+     * @return the header of every tweet
+     */
+    @Override
+    public ArrayList<TweetHeader> readIndex() {
+        lock.writeLock().lock();
+        try {
+            ArrayList<TweetHeader> headers = new ArrayList<>();
+            try {
+                Files.createDirectories(path);
+                readAuthors();
+                if (open())
+                    importLog();
+                slots.clear();
+                liveSize = 0;
+                for (int slot = 1; slot < slotCount; slot++) {
+                    ByteBuffer region = slotRegion(slot);
+                    int at = slotOffset(slot);
+                    int length = region.getInt(at + LENGTH);
+                    if (length == REMOVED)
+                        continue;
+                    long id = region.getLong(at);
+                    slots.put(id, slot);
+                    liveSize += length;
+                    headers.add(new TweetHeader(id, authorNames.get(region.getInt(at + AUTHOR)),
+                            LocalDateTime.ofEpochSecond(region.getLong(at + SECONDS), region.getInt(at + NANOS), ZoneOffset.UTC)));
+                }
+                if (heapEnd - liveSize > MAX_GARBAGE * heapEnd)
+                    compact();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            return headers;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * the mapped files are their own snapshot, they are only forced to the disk
+     */
+    @Override
+    public void writeSnapshot() {
+        lock.readLock().lock();
+        try {
+            if (index == null)
+                return;
+            index.force();
+            heap.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * read a tweet and the records that changed it from the mapped heap
+     *
+     * @param id the id
+     * @return the current json of the tweet or null if there is no such tweet
+     */
+    @Override
+    public JSONObject read(long id) {
+        Chain chain;
+        //// only the bytes are copied under the lock, they are parsed and applied outside it
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null)
+                return null;
+            chain = chain(index, heap, slot);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            return chain.tweet(id);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Write file.
+     *
+     * @param id         the id
+     * @param username   the username
+     * @param jsonObject the json object
+     */
+    @Override
+    public void writeFile(String id, String username, JSONObject jsonObject) {
+        append(TweetRecords.put(Long.parseLong(id), jsonObject));
+    }
+
+    /**
+     * Remove file.
+     *
+     * @param id       the id
+     * @param username the username
+     */
+    @Override
+    public void removeFile(String id, String username) {
+        append(TweetRecords.remove(Long.parseLong(id)));
+    }
+
+    /**
+     * Append like.
+     *
+     * @param id       the id of the tweet
+     * @param username the liker
+     * @param state    true for like and false for dislike
+     */
+    @Override
+    public void appendLike(long id, String username, boolean state) {
+        append(TweetRecords.like(id, username, state));
+    }
+
+    /**
+     * Append reply.
+     *
+     * @param id    the id of the replied tweet
+     * @param reply the reply json
+     */
+    @Override
+    public void appendReply(long id, JSONObject reply) {
+        append(TweetRecords.reply(id, reply));
+    }
+
+    /**
+     * Append remove reply.
+     *
+     * @param id      the id of the replied tweet
+     * @param replyId the reply id
+     */
+    @Override
+    public void appendRemoveReply(long id, long replyId) {
+        append(TweetRecords.removeReply(id, replyId));
+    }
+
+    /**
+     * Append retweet.
+     *
+     * @param id      the id of the retweeted tweet
+     * @param retweet the retweet summary json
+     */
+    @Override
+    public void appendRetweet(long id, JSONObject retweet) {
+        append(TweetRecords.retweet(id, retweet));
+    }
+
+    /**
+     * Append remove retweet.
+     *
+     * @param id        the id of the retweeted tweet
+     * @param retweetId the retweet id
+     */
+    @Override
+    public void appendRemoveRetweet(long id, long retweetId) {
+        append(TweetRecords.removeRetweet(id, retweetId));
+    }
+
+    /**
+     * write a new tweet, a removal or the record of a change, the json is made before the lock
+     *
+     * @param record the record
+     */
+    private void append(JSONObject record) {
+        long id = record.getLong("id");
+        try {
+            switch (record.getString("op")) {
+                case "PUT":
+                    put(id, record.getJSONObject("tweet"));
+                    break;
+                case "REMOVE":
+                    remove(id);
+                    break;
+                default:
+                    change(id, bytes(id, record));
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void put(long id, JSONObject tweet) throws IOException {
+        byte[] bytes = bytes(id, tweet);
+        JSONObject own = TweetRecords.own(tweet);
+        LocalDateTime sendDate = TweetRecords.sendDate(own);
+        String author = own.getString("author");
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                slot = slotCount;
+                ByteBuffer region = slotRegion(slot);
+                int at = slotOffset(slot);
+                region.putLong(at, id);
+                region.putInt(at + AUTHOR, authorOrdinal(author));
+                region.putInt(at + LENGTH, REMOVED);
+                region.putLong(at + SECONDS, sendDate.toEpochSecond(ZoneOffset.UTC));
+                region.putInt(at + NANOS, sendDate.getNano());
+                slots.put(id, slot);
+                slotCount++;
+            }
+            write(slot, bytes);
+            writeHeader();
+            compactIfGarbage();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(id);
+            if (slot == null)
+                return;
+            ByteBuffer region = slotRegion(slot);
+            int at = slotOffset(slot);
+            liveSize -= region.getInt(at + LENGTH);
+            region.putInt(at + LENGTH, REMOVED);
+            compactIfGarbage();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * link the record of a change to a tweet, when its records grow larger than its json they
+     * are applied outside the lock and the tweet is written again unless it changed meanwhile
+     *
+     * @param id     the id of the tweet
+     * @param record the record
+     * @throws IOException the io exception
+     */
+    private void change(long id, byte[] record) throws IOException {
+        Chain chain = null;
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null)
+                return;
+            if (link(slot, record))
+                chain = chain(index, heap, slot);
+            writeHeader();
+            compactIfGarbage();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (chain == null)
+            return;
+        byte[] bytes = bytes(id, chain.tweet(id));
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null || slotRegion(slot).getLong(slotOffset(slot) + OFFSET) != chain.head)
+                return;
+            write(slot, bytes);
+            writeHeader();
+            compactIfGarbage();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] bytes(long id, JSONObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > REGION_SIZE - RECORD_HEADER)
+            throw new IOException("tweet " + id + " is too large for the heap");
+        return bytes;
+    }
+
+    /**
+     * the offset of the next bytes in the heap, they never cross two regions
+     *
+     * @param length the length of the bytes
+     * @return the offset
+     */
+    private long reserve(int length) {
+        if (heapEnd % REGION_SIZE + length > REGION_SIZE)
+            heapEnd += REGION_SIZE - heapEnd % REGION_SIZE;
+        long offset = heapEnd;
+        heapEnd += length;
+        return offset;
+    }
+
+    /**
+     * write a tweet at the end of the heap and point its slot to it, without records
+     *
+     * @param slot  the slot
+     * @param bytes the json of the tweet
+     * @throws IOException the io exception
+     */
+    private void write(int slot, byte[] bytes) throws IOException {
+        long offset = reserve(bytes.length);
+        at(heap, offset).put(bytes);
+        ByteBuffer region = slotRegion(slot);
+        int at = slotOffset(slot);
+        int old = region.getInt(at + LENGTH);
+        if (old != REMOVED)
+            liveSize -= old;
+        region.putLong(at + OFFSET, offset);
+        region.putInt(at + LENGTH, bytes.length);
+        region.putInt(at + RECORDS, 0);
+        liveSize += bytes.length;
+    }
+
+    /**
+     * write a record at the end of the heap after the entries of a tweet and point its slot to it
+     *
+     * @param slot   the slot
+     * @param record the record
+     * @return true if the records are larger than the json of the tweet
+     * @throws IOException the io exception
+     */
+    private boolean link(int slot, byte[] record) throws IOException {
+        ByteBuffer region = slotRegion(slot);
+        int at = slotOffset(slot);
+        long previous = region.getLong(at + OFFSET);
+        int length = region.getInt(at + LENGTH);
+        int records = region.getInt(at + RECORDS);
+        int tweetLength = records == 0 ? length : at(heap, previous + 12).getInt();
+        long offset = reserve(RECORD_HEADER + record.length);
+        at(heap, offset).putLong(previous).putInt(record.length).putInt(tweetLength).put(record);
+        length += RECORD_HEADER + record.length;
+        region.putLong(at + OFFSET, offset);
+        region.putInt(at + LENGTH, length);
+        region.putInt(at + RECORDS, records + 1);
+        liveSize += RECORD_HEADER + record.length;
+        return length - tweetLength > Math.max(tweetLength, MIN_RECORD_BYTES);
+    }
+
+    /**
+     * copy the json of a tweet and its records out of the mapping
+     *
+     * @param indexFile the index
+     * @param heapFile  the heap
+     * @param slot      the slot
+     * @return the bytes of the tweet
+     * @throws IOException the io exception
+     */
+    private static Chain chain(MappedFile indexFile, MappedFile heapFile, int slot) throws IOException {
+        ByteBuffer region = indexFile.region(slot / SLOTS_PER_REGION);
+        int at = slotOffset(slot);
+        long head = region.getLong(at + OFFSET);
+        int tweetLength = region.getInt(at + LENGTH);
+        byte[][] records = new byte[region.getInt(at + RECORDS)][];
+        long offset = head;
+        for (int i = records.length - 1; i >= 0; i--) {
+            ByteBuffer entry = at(heapFile, offset);
+            offset = entry.getLong();
+            records[i] = new byte[entry.getInt()];
+            tweetLength = entry.getInt();
+            entry.get(records[i]);
+        }
+        byte[] tweet = new byte[tweetLength];
+        at(heapFile, offset).get(tweet);
+        return new Chain(head, tweet, records);
+    }
+
+    private static ByteBuffer at(MappedFile file, long offset) throws IOException {
+        ByteBuffer entry = file.region((int) (offset / REGION_SIZE)).duplicate();
+        entry.position((int) (offset % REGION_SIZE));
+        return entry;
+    }
+
+    private ByteBuffer slotRegion(int slot) throws IOException {
+        return index.region(slot / SLOTS_PER_REGION);
+    }
+
+    private static int slotOffset(int slot) {
+        return slot % SLOTS_PER_REGION * SLOT_SIZE;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = index.region(0);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, slotCount);
+        header.putLong(16, heapEnd);
+    }
+
+    /**
+     * map the newest generation of the files whose header is written, the others are
+     * left by a compaction and are removed
+     *
+     * @return true if there were no files
+     * @throws IOException the io exception
+     */
+    private boolean open() throws IOException {
+        TreeMap<Long, Path> generations = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                generations.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - INDEX_SUFFIX.length())), file);
+            }
+        }
+        boolean found = false;
+        for (long candidate : generations.descendingKeySet()) {
+            if (!found && complete(generations.get(candidate))) {
+                generation = candidate;
+                found = true;
+                continue;
+            }
+            Files.deleteIfExists(indexPath(candidate));
+            Files.deleteIfExists(heapPath(candidate));
+        }
+        if (!found)
+            generation = 1;
+        index = new MappedFile(indexPath(generation));
+        heap = new MappedFile(heapPath(generation));
+        if (!found) {
+            slotCount = 1;
+            heapEnd = 0;
+            writeHeader();
+            return true;
+        }
+        slotCount = index.region(0).getInt(8);
+        heapEnd = index.region(0).getLong(16);
+        return false;
+    }
+
+    private boolean complete(Path indexFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            channel.read(header, 0);
+        }
+        return header.getInt(0) == MAGIC && (header.getInt(4) == VERSION || header.getInt(4) == FIRST_VERSION);
+    }
+
+    private void compactIfGarbage() throws IOException {
+        if (heapEnd > MIN_COMPACT_SIZE && heapEnd - liveSize > MAX_GARBAGE * heapEnd)
+            compact();
+    }
+
+    /**
+     * copy the tweets and their records to a new generation of the files without their old
+     * copies, the header of the new index is written after everything else so a crash in
+     * between keeps the old files. the bytes are copied as they are and nothing is parsed
+     *
+     * @throws IOException the io exception
+     */
+    private void compact() throws IOException {
+        long before = heapEnd;
+        MappedFile oldIndex = index;
+        MappedFile oldHeap = heap;
+        HashMap<Long, Integer> moved = new HashMap<>();
+        index = new MappedFile(indexPath(generation + 1));
+        heap = new MappedFile(heapPath(generation + 1));
+        slotCount = 1;
+        heapEnd = 0;
+        liveSize = 0;
+        for (int slot : slots.values().stream().mapToInt(Integer::intValue).sorted().toArray()) {
+            ByteBuffer from = oldIndex.region(slot / SLOTS_PER_REGION);
+            int at = slotOffset(slot);
+            Chain chain = chain(oldIndex, oldHeap, slot);
+            int copy = slotCount++;
+            ByteBuffer to = slotRegion(copy);
+            int copyAt = slotOffset(copy);
+            to.putLong(copyAt, from.getLong(at));
+            to.putInt(copyAt + AUTHOR, from.getInt(at + AUTHOR));
+            to.putInt(copyAt + LENGTH, REMOVED);
+            to.putLong(copyAt + SECONDS, from.getLong(at + SECONDS));
+            to.putInt(copyAt + NANOS, from.getInt(at + NANOS));
+            write(copy, chain.tweet);
+            for (byte[] record : chain.records) {
+                link(copy, record);
+            }
+            moved.put(from.getLong(at), copy);
+        }
+        index.force();
+        heap.force();
+        writeHeader();
+        index.force();
+        oldIndex.close();
+        oldHeap.close();
+        Files.deleteIfExists(indexPath(generation));
+        Files.deleteIfExists(heapPath(generation));
+        generation++;
+        slots = moved;
+        System.out.println("tweet heap compacted from " + before + " to " + heapEnd + " bytes");
+    }
+
+    /**
+     * the first start with the mapped files reads the tweets from the log
+     *
+     * @throws IOException the io exception
+     */
+    private void importLog() throws IOException {
+        boolean found = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().startsWith(PREFIX) && !file.getFileName().toString().equals(AUTHORS))
+                    found = true;
+            }
+        }
+        if (!found)
+            return;
+        LogTweetDataBase log = new LogTweetDataBase();
+        int count = 0;
+        for (TweetHeader header : log.readIndex()) {
+            JSONObject tweet = log.read(header.getId());
+            if (tweet == null)
+                continue;
+            put(header.getId(), tweet);
+            count++;
+        }
+        writeHeader();
+        System.out.println(count + " tweets imported from the log into the mapped files");
+    }
+
+    private int authorOrdinal(String author) throws IOException {
+        Integer ordinal = authorOrdinals.get(author);
+        if (ordinal != null)
+            return ordinal;
+        Files.write(path.resolve(AUTHORS), (author + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        authorOrdinals.put(author, authorNames.size());
+        authorNames.add(author);
+        return authorNames.size() - 1;
+    }
+
+    /**
+     * read the authors in the order of their ordinals, a line cut by a crash is dropped
+     *
+     * @throws IOException the io exception
+     */
+    private void readAuthors() throws IOException {
+        Path file = path.resolve(AUTHORS);
+        if (!Files.exists(file))
+            return;
+        String authors = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int end = authors.lastIndexOf('\n') + 1;
+        if (end != authors.length()) {
+            authors = authors.substring(0, end);
+            Files.write(file, authors.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String author : authors.split("\n")) {
+            if (author.isEmpty())
+                continue;
+            authorOrdinals.put(author, authorNames.size());
+            authorNames.add(author);
+        }
+    }
+
+    private Path indexPath(long generation) {
+        return path.resolve(PREFIX + generation + INDEX_SUFFIX);
+    }
+
+    private Path heapPath(long generation) {
+        return path.resolve(PREFIX + generation + HEAP_SUFFIX);
+    }
+
+    /**
+     * The type Chain.
+     * the bytes of a tweet and of the records that changed it, oldest first
+     */
+    private static final class Chain {
+        //// the offset of the newest entry when the bytes were copied
+        private final long head;
+        private final byte[] tweet;
+        private final byte[][] records;
+
+        private Chain(long head, byte[] tweet, byte[][] records) {
+            this.head = head;
+            this.tweet = tweet;
+            this.records = records;
+        }
+
+        private JSONObject tweet(long id) {
+            JSONObject[] changes = new JSONObject[records.length];
+            for (int i = 0; i < records.length; i++) {
+                changes[i] = new JSONObject(new String(records[i], StandardCharsets.UTF_8));
+            }
+            return TweetRecords.apply(id, new JSONObject(new String(tweet, StandardCharsets.UTF_8)), changes);
+        }
+    }
+
+    /**
+     * The type Mapped file.
+     * a file mapped one region at a time, a region is mapped the first time it is used and
+     * the file grows to hold it
+     */
+    private static class MappedFile {
+        private final FileChannel channel;
+        private final ArrayList<MappedByteBuffer> regions = new ArrayList<>();
+
+        private MappedFile(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+
+        private ByteBuffer region(int number) throws IOException {
+            while (regions.size() <= number) {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * REGION_SIZE, REGION_SIZE));
+            }
+            return regions.get(number);
+        }
+
+        private void force() {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+}
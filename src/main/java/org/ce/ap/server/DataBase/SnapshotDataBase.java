@@ -0,0 +1,123 @@
+package  org.ce.ap.server.DataBase;
+
+import  org.ce.ap.server.ServerConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The type Snapshot data base.
+ * a binary file that sums up what the server would otherwise rebuild from its files at start,
+ * it is written whole and moved over the previous one so a crash leaves the older snapshot,
+ * and it is mapped when it is read
+ */
+public class SnapshotDataBase {
+    private static final int MAGIC = 0x54575350;
+    private final Path file;
+    private final int version;
+
+    /**
+     * Instantiates a new Snapshot data base.
+     *
+     * @param name    the file name
+     * @param version the version of the format, a snapshot of another version is not read
+     */
+    public SnapshotDataBase(String name, int version) {
+        this.file = Path.of(ServerConfig.getProperty("server.snapshot.file")).resolve(name);
+        this.version = version;
+    }
+
+    /**
+     * map the snapshot
+     *
+     * @return the content after the header or null if there is no snapshot of this version
+     */
+    public ByteBuffer read() {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != version) {
+                System.err.println("skip the snapshot " + file.getFileName() + " of another version");
+                return null;
+            }
+            return buffer;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot.
+     *
+     * @param content the content after the header
+     */
+    public void write(Content content) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(version);
+                content.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write a string that may be null.
+     *
+     * @param out    the output
+     * @param string the string
+     * @throws IOException the io exception
+     */
+    public static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by writeString.
+     *
+     * @param buffer the buffer
+     * @return the string
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The interface Content.
+     */
+    public interface Content {
+        /**
+         * Write the content.
+         *
+         * @param out the output
+         * @throws IOException the io exception
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+}
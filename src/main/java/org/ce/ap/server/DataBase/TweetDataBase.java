@@ -1,29 +1,59 @@
 package  org.ce.ap.server.DataBase;
 
 import  org.ce.ap.server.ServerConfig;
-import  org.ce.ap.server.model.user.User;
 import org.json.JSONObject;
 
-import java.io.*;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
- * The type Tweet data base.
+ * The interface Tweet data base.
+ * where the tweets are kept, server.tweets.storage chooses the log or the mapped files
  */
-public class TweetDataBase {
-    private Path path;
+public interface TweetDataBase {
+    /**
+     * the storage of the configuration
+     *
+     * @return the tweet data base
+     */
+    static TweetDataBase create() {
+        String storage = ServerConfig.getProperty("server.tweets.storage").trim();
+        if (storage.equals("mapped"))
+            return new MappedTweetDataBase();
+        return new LogTweetDataBase();
+    }
+
+    /**
+     * read what is kept of every tweet, it should be called once before the first write
+     *
+     * @return the header of every tweet
+     */
+    ArrayList<TweetHeader> readIndex();
 
     /**
-     * Instantiates a new Database handler.
+     * write what a start needs to read the index quickly
      */
-    public TweetDataBase() {
-        path = Path.of(ServerConfig.getProperty("server.tweets.file"));
+    void writeSnapshot();
+
+    /**
+     * the writes of this thread until endBatch may be kept and written together
+     */
+    default void beginBatch() {
+    }
+
+    /**
+     * write what the batch kept
+     */
+    default void endBatch() {
     }
 
+    /**
+     * read a tweet
+     *
+     * @param id the id
+     * @return the current json of the tweet or null if there is no such tweet
+     */
+    JSONObject read(long id);
+
     /**
      * Write file.
      *
@@ -31,82 +61,54 @@ public class TweetDataBase {
      * @param username   the username
      * @param jsonObject the json object
      */
-    public void writeFile(String id, String username, JSONObject jsonObject) {
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(path.toFile().getAbsoluteFile() + File.separator + id + " " + username))) {
-            out.write(jsonObject.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
+    void writeFile(String id, String username, JSONObject jsonObject);
 
     /**
-     * Read file json object.
+     * Remove file.
      *
      * @param id       the id
      * @param username the username
-     * @return the json object
      */
-    public JSONObject readFile(String id, String username) {
-        String fileStr = "";
-        try (BufferedReader reader = new BufferedReader(new FileReader(path + File.separator + id + " " + username))) {
-            int count;
-            char[] buffer = new char[20];
-            while (reader.ready()) {
-                count = reader.read(buffer);
-                fileStr += new String(buffer, 0, count);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    void removeFile(String id, String username);
 
-        return new JSONObject(fileStr);
-    }
+    /**
+     * Append like.
+     *
+     * @param id       the id of the tweet
+     * @param username the liker
+     * @param state    true for like and false for dislike
+     */
+    void appendLike(long id, String username, boolean state);
 
     /**
-     * Get directory files array list.
+     * Append reply.
      *
-     * @param user the user
-     * @return the array list
+     * @param id    the id of the replied tweet
+     * @param reply the reply json
      */
-    public HashMap<Long, JSONObject> getDirectoryFiles(User user) {
-        HashMap<Long, JSONObject> files = new HashMap<>();
-        if (Files.isDirectory(path)) {
-            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
-                for (Path p : directoryStream) {
-                    String[] words = p.getFileName().toString().split("\\s");
-                    ArrayList<String> followings = new ArrayList<>();
-                    for (User u : user.getFollowings()) {
-                        followings.add(u.getUsername());
-                    }
-                    System.out.println(followings);
-                    if (followings.contains(words[1])) {
-                        files.put(Long.parseLong(words[0]), readFile(words[0], words[1]));
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        System.out.println("file size" + files.size());
-        return files;
-    }
+    void appendReply(long id, JSONObject reply);
 
     /**
-     * Remove file.
+     * Append remove reply.
      *
-     * @param id       the id
-     * @param username the username
+     * @param id      the id of the replied tweet
+     * @param replyId the reply id
      */
-    public void removeFile(String id, String username) {
-        try {
-            File myObj = new File(path + File.separator + id + " " + username);
-            if (myObj.delete()) {
-                System.out.println("Deleted the file: " + myObj.getName());
-            } else {
-                System.out.println("Failed to delete the file.");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+    void appendRemoveReply(long id, long replyId);
+
+    /**
+     * Append retweet.
+     *
+     * @param id      the id of the retweeted tweet
+     * @param retweet the retweet summary json
+     */
+    void appendRetweet(long id, JSONObject retweet);
+
+    /**
+     * Append remove retweet.
+     *
+     * @param id        the id of the retweeted tweet
+     * @param retweetId the retweet id
+     */
+    void appendRemoveRetweet(long id, long retweetId);
 }
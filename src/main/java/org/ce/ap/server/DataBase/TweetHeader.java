@@ -0,0 +1,53 @@
+package  org.ce.ap.server.DataBase;
+
+import java.time.LocalDateTime;
+
+/**
+ * The type Tweet header.
+ * what is known about a tweet before it is read from the log, a retweet is sorted by its own tweet
+ */
+public class TweetHeader {
+    private final long id;
+    private final String author;
+    private final LocalDateTime sendDate;
+
+    /**
+     * Instantiates a new Tweet header.
+     *
+     * @param id       the id
+     * @param author   the author's username
+     * @param sendDate the send date
+     */
+    public TweetHeader(long id, String author, LocalDateTime sendDate) {
+        this.id = id;
+        this.author = author;
+        this.sendDate = sendDate;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets author.
+     *
+     * @return the author's username
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Gets send date.
+     *
+     * @return the send date
+     */
+    public LocalDateTime getSendDate() {
+        return sendDate;
+    }
+}
@@ -0,0 +1,241 @@
+package  org.ce.ap.server.DataBase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * The type Tweet records.
+ * the records that describe a new tweet or a change of one, and how a change is applied
+ * to the json of the tweet. both storages of the tweets use the same records
+ */
+final class TweetRecords {
+    private TweetRecords() {
+    }
+
+    /**
+     * the record that starts a compacted segment, the tweets before it are forgotten
+     *
+     * @return the record
+     */
+    static JSONObject base() {
+        return record("BASE", 0);
+    }
+
+    /**
+     * a new tweet or the whole json of a tweet
+     *
+     * @param id    the id
+     * @param tweet the json of the tweet
+     * @return the record
+     */
+    static JSONObject put(long id, JSONObject tweet) {
+        JSONObject record = record("PUT", id);
+        record.put("tweet", tweet);
+        return record;
+    }
+
+    /**
+     * Remove json object.
+     *
+     * @param id the id
+     * @return the record
+     */
+    static JSONObject remove(long id) {
+        return record("REMOVE", id);
+    }
+
+    /**
+     * Like json object.
+     *
+     * @param id       the id of the tweet
+     * @param username the liker
+     * @param state    true for like and false for dislike
+     * @return the record
+     */
+    static JSONObject like(long id, String username, boolean state) {
+        JSONObject record = record(state ? "LIKE" : "DISLIKE", id);
+        record.put("user", username);
+        return record;
+    }
+
+    /**
+     * Reply json object.
+     *
+     * @param id    the id of the replied tweet
+     * @param reply the reply json
+     * @return the record
+     */
+    static JSONObject reply(long id, JSONObject reply) {
+        JSONObject record = record("REPLY", id);
+        record.put("reply", reply);
+        return record;
+    }
+
+    /**
+     * Remove reply json object.
+     *
+     * @param id      the id of the replied tweet
+     * @param replyId the reply id
+     * @return the record
+     */
+    static JSONObject removeReply(long id, long replyId) {
+        JSONObject record = record("REMOVE_REPLY", id);
+        record.put("replyId", replyId);
+        return record;
+    }
+
+    /**
+     * Retweet json object.
+     *
+     * @param id      the id of the retweeted tweet
+     * @param retweet the retweet summary json
+     * @return the record
+     */
+    static JSONObject retweet(long id, JSONObject retweet) {
+        JSONObject record = record("RETWEET", id);
+        record.put("retweet", retweet);
+        return record;
+    }
+
+    /**
+     * Remove retweet json object.
+     *
+     * @param id        the id of the retweeted tweet
+     * @param retweetId the retweet id
+     * @return the record
+     */
+    static JSONObject removeRetweet(long id, long retweetId) {
+        JSONObject record = record("REMOVE_RETWEET", id);
+        record.put("retweetId", retweetId);
+        return record;
+    }
+
+    private static JSONObject record(String operation, long id) {
+        JSONObject record = new JSONObject();
+        record.put("op", operation);
+        record.put("id", id);
+        return record;
+    }
+
+    /**
+     * apply a record to the tweets it may change
+     *
+     * @param record the record
+     * @param tweets the tweets by id
+     */
+    static void apply(JSONObject record, HashMap<Long, JSONObject> tweets) {
+        String operation = record.getString("op");
+        long id = record.getLong("id");
+        if (operation.equals("BASE")) {
+            tweets.clear();
+            return;
+        }
+        if (operation.equals("PUT")) {
+            tweets.put(id, record.getJSONObject("tweet"));
+            return;
+        }
+        if (operation.equals("REMOVE")) {
+            tweets.remove(id);
+            return;
+        }
+        JSONObject tweet = tweets.get(id);
+        if (tweet == null)
+            return;
+        //// the changes of a retweet belong to its own tweet not the retweeted one
+        tweet = own(tweet);
+        switch (operation) {
+            case "LIKE":
+                removeValue(tweet.getJSONArray("likes"), record.getString("user"));
+                tweet.getJSONArray("likes").put(record.getString("user"));
+                break;
+            case "DISLIKE":
+                removeValue(tweet.getJSONArray("likes"), record.getString("user"));
+                break;
+            case "REPLY":
+                tweet.getJSONArray("replies").put(record.getJSONObject("reply"));
+                break;
+            case "REMOVE_REPLY":
+                removeById(tweet.getJSONArray("replies"), record.getLong("replyId"));
+                break;
+            case "RETWEET":
+                removeById(tweet.getJSONArray("retweets"), record.getJSONObject("retweet").getLong("id"));
+                tweet.getJSONArray("retweets").put(record.getJSONObject("retweet"));
+                break;
+            case "REMOVE_RETWEET":
+                removeById(tweet.getJSONArray("retweets"), record.getLong("retweetId"));
+                break;
+        }
+    }
+
+    /**
+     * apply the records of one tweet in order, its likes are kept in a set meanwhile so a like
+     * does not search the whole list
+     *
+     * @param id      the id of the tweet
+     * @param tweet   the json of the tweet
+     * @param records the records of the tweet, oldest first
+     * @return the changed json
+     */
+    static JSONObject apply(long id, JSONObject tweet, JSONObject[] records) {
+        JSONArray array = own(tweet).getJSONArray("likes");
+        LinkedHashSet<String> likes = new LinkedHashSet<>();
+        for (int i = 0; i < array.length(); i++) {
+            likes.add(array.getString(i));
+        }
+        HashMap<Long, JSONObject> tweets = new HashMap<>();
+        tweets.put(id, tweet);
+        for (JSONObject record : records) {
+            switch (record.getString("op")) {
+                case "LIKE":
+                    likes.remove(record.getString("user"));
+                    likes.add(record.getString("user"));
+                    break;
+                case "DISLIKE":
+                    likes.remove(record.getString("user"));
+                    break;
+                default:
+                    apply(record, tweets);
+            }
+        }
+        own(tweet).put("likes", new JSONArray(likes));
+        return tweet;
+    }
+
+    /**
+     * the json of the tweet itself, for a retweet it is the new tweet not the retweeted one
+     *
+     * @param tweet the json of a tweet or a retweet
+     * @return the json of its own tweet
+     */
+    static JSONObject own(JSONObject tweet) {
+        return tweet.has("newTweet") ? tweet.getJSONObject("newTweet") : tweet;
+    }
+
+    /**
+     * the send date of a tweet that is just written or read from a file
+     *
+     * @param tweet the json of the tweet
+     * @return the send date
+     */
+    static LocalDateTime sendDate(JSONObject tweet) {
+        return LocalDateTime.parse(String.valueOf(tweet.get("sendDate")));
+    }
+
+    private static void removeValue(JSONArray array, String value) {
+        for (int i = array.length() - 1; i >= 0; i--) {
+            if (value.equals(array.get(i)))
+                array.remove(i);
+        }
+    }
+
+    private static void removeById(JSONArray array, long id) {
+        for (int i = array.length() - 1; i >= 0; i--) {
+            if (array.getJSONObject(i).getLong("id") == id)
+                array.remove(i);
+        }
+    }
+}
@@ -4,10 +4,12 @@ import  org.ce.ap.server.ServerConfig;
 import org.json.JSONObject;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * The type User data base.
@@ -29,7 +31,7 @@ public class UserDataBase {
      * @param jsonObject the json object
      */
     public void writeFile(String id, JSONObject jsonObject) {
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(path.toFile().getAbsoluteFile() + File.separator + id))) {
+        try (BufferedWriter out = Files.newBufferedWriter(path.resolve(id), StandardCharsets.UTF_8)) {
             out.write(jsonObject.toString());
         } catch (IOException e) {
             e.printStackTrace();
@@ -44,13 +46,8 @@ public class UserDataBase {
      */
     public JSONObject readFile(String id) {
         String fileStr = "";
-        try (BufferedReader reader = new BufferedReader(new FileReader(path + File.separator + id))) {
-            int count;
-            char[] buffer = new char[20];
-            while (reader.ready()) {
-                count = reader.read(buffer);
-                fileStr += new String(buffer, 0, count);
-            }
+        try {
+            fileStr = new String(Files.readAllBytes(path.resolve(id)), StandardCharsets.UTF_8);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -78,6 +75,25 @@ public class UserDataBase {
         return files;
     }
 
+    /**
+     * Gets file times.
+     *
+     * @return the last modified time of every user file by its name
+     */
+    public HashMap<String, Long> getFileTimes() {
+        HashMap<String, Long> times = new HashMap<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
+                for (Path p : directoryStream) {
+                    times.put(p.getFileName().toString(), Files.getLastModifiedTime(p).toMillis());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return times;
+    }
+
     /**
      * Remove file.
      *
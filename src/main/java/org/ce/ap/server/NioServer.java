@@ -0,0 +1,412 @@
+package  org.ce.ap.server;
+
+import org.ce.ap.protocol.BinaryInput;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.protocol.MessageDecoder;
+import org.ce.ap.protocol.MessageDeflater;
+import org.ce.ap.protocol.MessageFraming;
+import  org.ce.ap.server.middleClasses.ServerProcessor;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The type Nio server.
+ * accepts the connections on one thread and multiplexes all of them over a few selector event loops,
+ * the requests themselves are processed by the workers so a slow one does not stall the loop
+ */
+public class NioServer {
+    private final int port;
+    private final EventLoop[] eventLoops;
+    private int nextLoop;
+
+    /**
+     * Instantiates a new Nio server.
+     *
+     * @param port          the port
+     * @param eventLoopSize the number of event loop threads
+     * @param workers       the workers that process the requests
+     * @param maxInFlight   the requests a connection may have waiting before its reads are paused
+     * @throws IOException the io exception
+     */
+    public NioServer(int port, int eventLoopSize, WorkerPool workers, int maxInFlight) throws IOException {
+        this.port = port;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoopSize)];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(workers, Math.max(1, maxInFlight));
+        }
+    }
+
+    /**
+     * start the event loops and accept the clients until the server socket is closed
+     *
+     * @throws IOException the io exception
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread thread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try (ServerSocketChannel welcomingChannel = ServerSocketChannel.open()) {
+            welcomingChannel.bind(new InetSocketAddress(port));
+            System.out.print("Server started (nio).\nWaiting for a client ... ");
+            while (true) {
+                SocketChannel channel = welcomingChannel.accept();
+                System.out.println("client accepted!");
+                eventLoops[nextLoop].register(channel);
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+            }
+        }
+    }
+}
+
+/**
+ * The type Event loop.
+ * owns one selector and all the connections registered on it
+ */
+class EventLoop implements Runnable {
+    private final Selector selector;
+    private final WorkerPool workers;
+    private final int maxInFlight;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    //// what the workers finished, run on the loop because only the loop touches the connections
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192);
+
+    /**
+     * Instantiates a new Event loop.
+     *
+     * @param workers     the workers
+     * @param maxInFlight the max in flight requests of a connection
+     * @throws IOException the io exception
+     */
+    EventLoop(WorkerPool workers, int maxInFlight) throws IOException {
+        this.selector = Selector.open();
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets workers.
+     *
+     * @return the workers
+     */
+    WorkerPool getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Gets max in flight.
+     *
+     * @return the max in flight
+     */
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * run something on this loop, a worker calls it when a request is done
+     *
+     * @param completion the completion
+     */
+    void complete(Runnable completion) {
+        completions.add(completion);
+        selector.wakeup();
+    }
+
+    /**
+     * hand an accepted channel to this loop
+     *
+     * @param channel the channel
+     */
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+                registerPendingChannels();
+                runCompletions();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    private void runCompletions() {
+        Runnable completion;
+        while ((completion = completions.poll()) != null) {
+            completion.run();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(key, this));
+            } catch (IOException e) {
+                System.err.println(e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable())
+                connection.read(readBuffer);
+            if (key.isValid() && key.isWritable())
+                connection.flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println(e);
+            connection.close();
+        }
+    }
+
+    private void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+}
+
+/**
+ * The type Nio connection.
+ * keeps the per client state : its processor, the unfinished message, the requests that wait for a worker
+ * and the unsent responses. requests with a requestId run together and may be answered out of order,
+ * the others and the ones that sign in run alone because the processor keeps the login
+ */
+class NioConnection {
+    private final SelectionKey key;
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final ServerProcessor serverProcessor = new ServerProcessor();
+    private final MessageDecoder decoder = new MessageDecoder(Server.maxMessageSize());
+    //// the workers and the loop write the responses at once
+    private static final ThreadLocal<JsonOutput> RESPONSE_OUTPUT = ThreadLocal.withInitial(JsonOutput::new);
+    private static final ThreadLocal<BinaryOutput> BINARY_OUTPUT = ThreadLocal.withInitial(BinaryOutput::new);
+    private final Queue<Request> requests = new ArrayDeque<>();
+    //// one deflate stream for the connection, its messages reach the loop in the order it wrote them
+    private final ReentrantLock deflaterLock = new ReentrantLock();
+    private MessageDeflater deflater;
+    private final Queue<ByteBuffer> responses = new ArrayDeque<>();
+    private int running;
+    //// the running request must finish before any other starts
+    private boolean alone;
+    private boolean closed;
+
+    /**
+     * Instantiates a new Nio connection.
+     *
+     * @param key  the selection key of the channel
+     * @param loop the loop of the channel
+     */
+    NioConnection(SelectionKey key, EventLoop loop) {
+        this.key = key;
+        this.channel = (SocketChannel) key.channel();
+        this.loop = loop;
+    }
+
+    /**
+     * read what is available and queue every request that is complete,
+     * reading stops while the connection has too many requests in flight
+     *
+     * @param buffer the loop's read buffer
+     * @throws IOException the io exception
+     */
+    void read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        if (read == -1) {
+            close();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            byte[] request = decoder.decode(buffer);
+            if (request == null)
+                continue;
+            if (BinaryInput.isBinary(request))
+                requests.add(new Request(BinaryInput.readRequest(request), true));
+            else
+                requests.add(new Request(new JSONObject(new String(request, StandardCharsets.UTF_8)), false));
+        }
+        processNext();
+        if (requests.size() + running >= loop.getMaxInFlight() && key.isValid())
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    private void processNext() throws IOException {
+        while (!closed && !requests.isEmpty()) {
+            Request request = requests.peek();
+            boolean concurrent = ServerProcessor.isConcurrent(request.json);
+            if (running > 0 && (alone || !concurrent))
+                return;
+            requests.poll();
+            if (!loop.getWorkers().execute(() -> process(request))) {
+                JSONObject busy = Server.busyResponse();
+                busy.putOpt("requestId", request.json.opt("requestId"));
+                responses.add(frame(busy, request.binary, null));
+                flush();
+                continue;
+            }
+            running++;
+            alone = !concurrent;
+        }
+    }
+
+    private void process(Request request) {
+        ByteBuffer frame;
+        try {
+            JSONObject response = serverProcessor.processRequest(request.json);
+            if (serverProcessor.isCompressing()) {
+                deflaterLock.lock();
+                try {
+                    if (deflater == null)
+                        deflater = Server.newDeflater();
+                    ByteBuffer compressed = frame(response, request.binary, deflater);
+                    loop.complete(() -> completed(compressed));
+                    return;
+                } finally {
+                    deflaterLock.unlock();
+                }
+            }
+            frame = frame(response, request.binary, null);
+        } catch (IOException | RuntimeException e) {
+            System.err.println(e);
+            frame = null;
+        }
+        ByteBuffer response = frame;
+        loop.complete(() -> completed(response));
+    }
+
+    private void completed(ByteBuffer response) {
+        running--;
+        if (running == 0)
+            alone = false;
+        if (closed) {
+            if (running == 0)
+                release();
+            return;
+        }
+        try {
+            if (response == null)
+                throw new IOException("the request could not be processed");
+            responses.add(response);
+            flush();
+            processNext();
+            if (requests.size() + running < loop.getMaxInFlight())
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        } catch (IOException | RuntimeException e) {
+            System.err.println(e);
+            close();
+        }
+    }
+
+    //// a response goes back in the form of its request, and compressed when there is a deflater and it is large enough
+    private static ByteBuffer frame(JSONObject response, boolean binary, MessageDeflater deflater) throws IOException {
+        byte[] bytes;
+        int size;
+        if (binary) {
+            BinaryOutput binaryOutput = BINARY_OUTPUT.get();
+            binaryOutput.writeResponse(response);
+            bytes = binaryOutput.array();
+            size = binaryOutput.size();
+        } else {
+            JsonOutput responseOutput = RESPONSE_OUTPUT.get();
+            responseOutput.writeResponse(response);
+            bytes = responseOutput.array();
+            size = responseOutput.size();
+        }
+        if (deflater != null && deflater.deflate(bytes, 0, size))
+            return MessageFraming.frame(deflater.array(), deflater.size());
+        return MessageFraming.frame(bytes, size);
+    }
+
+    //// the processor and the deflater are freed once no worker uses them
+    private void release() {
+        serverProcessor.close();
+        if (deflater != null)
+            deflater.end();
+    }
+
+    /**
+     * write the queued responses, the rest waits for the channel to become writable
+     *
+     * @throws IOException the io exception
+     */
+    void flush() throws IOException {
+        while (!responses.isEmpty()) {
+            ByteBuffer response = responses.peek();
+            channel.write(response);
+            if (response.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            responses.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Close the connection.
+     */
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        //// a request on a worker still uses the processor, it is closed when the request completes
+        if (running == 0)
+            release();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    /**
+     * The type Request.
+     * a request and whether it came in the binary form
+     */
+    private static final class Request {
+        private final JSONObject json;
+        private final boolean binary;
+
+        private Request(JSONObject json, boolean binary) {
+            this.json = json;
+            this.binary = binary;
+        }
+    }
+}
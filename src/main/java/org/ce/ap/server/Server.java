@@ -1,18 +1,29 @@
 package  org.ce.ap.server;
 
 
+import org.ce.ap.protocol.BinaryInput;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.protocol.MessageDeflater;
+import org.ce.ap.protocol.MessageFraming;
 import  org.ce.ap.server.managers.TweetManager;
 import  org.ce.ap.server.managers.UserManager;
 import  org.ce.ap.server.middleClasses.ServerProcessor;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The type Server.
@@ -25,6 +36,64 @@ public class Server {
     public static void configureServer() {
         UserManager.getInstance();
         TweetManager.getInstance();
+        scheduleSnapshots();
+    }
+
+    /**
+     * write the snapshots every few minutes and when the server stops, the next start reads
+     * them instead of every user file and the whole tweet log
+     */
+    private static void scheduleSnapshots() {
+        long interval = Long.parseLong(ServerConfig.getProperty("server.snapshot.interval-minutes"));
+        ScheduledExecutorService snapshotWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotWriter.scheduleWithFixedDelay(Server::writeSnapshots, interval, interval, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(Server::writeSnapshots, "snapshot-shutdown"));
+    }
+
+    /**
+     * Write the snapshots of the users and the tweets.
+     */
+    public static synchronized void writeSnapshots() {
+        long start = System.currentTimeMillis();
+        UserManager.getInstance().writeSnapshot();
+        TweetManager.getInstance().writeSnapshot();
+        System.out.println("snapshots written in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * the largest request the server accepts
+     *
+     * @return the max message size
+     */
+    static int maxMessageSize() {
+        String size = ServerConfig.getProperty("server.max-message-size");
+        return size == null ? MessageFraming.DEFAULT_MAX_MESSAGE_SIZE : Integer.parseInt(size);
+    }
+
+    /**
+     * the deflater of a connection that asked for compressed responses
+     *
+     * @return the message deflater
+     */
+    static MessageDeflater newDeflater() {
+        return new MessageDeflater(Integer.parseInt(ServerConfig.getProperty("server.compression.level").trim()),
+                Integer.parseInt(ServerConfig.getProperty("server.compression.threshold").trim()));
+    }
+
+    /**
+     * the answer to a request or a connection that finds the worker queue full
+     *
+     * @return the response
+     */
+    static JSONObject busyResponse() {
+        JSONObject response = new JSONObject();
+        response.put("hasError", true);
+        response.put("errorCode", "ServerBusyException");
+        return response;
     }
 
     /**
@@ -35,14 +104,26 @@ public class Server {
     public static void main(String[] args) {
         configureServer();
         int serverPort = Integer.parseInt(ServerConfig.getProperty("server.port"));
-        ExecutorService pool = Executors.newCachedThreadPool();
+        String mode = ServerConfig.getProperty("server.mode");
+        WorkerPool workers = "virtual".equals(mode) ? WorkerPool.createVirtual("client-handler") : WorkerPool.create("client-handler");
+        if ("nio".equals(mode)) {
+            ServerMetrics.register(workers, null);
+            startNio(serverPort, workers);
+            return;
+        }
+        //// a virtual thread serves its whole client, otherwise a bounded pool reads the clients and the workers run their requests
+        WorkerPool readers = workers.isVirtual() ? null : WorkerPool.createReaders("client-reader");
+        ServerMetrics.register(workers, readers);
+        int maxInFlight = Math.max(1, Integer.parseInt(ServerConfig.getProperty("server.workers.max-in-flight")));
         try (ServerSocket welcomingSocket = new ServerSocket(serverPort)) {
             System.out.print("Server started.\nWaiting for a client ... ");
             while (true) {
                 Socket connectionSocket = welcomingSocket.accept();
                 System.out.println("client accepted!");
-                pool.execute(new Thread(new ClientHandler(connectionSocket)));
-
+                boolean accepted = readers == null ? workers.execute(new ClientHandler(connectionSocket, null, 1))
+                        : readers.execute(new ClientHandler(connectionSocket, workers, maxInFlight));
+                if (!accepted)
+                    ClientHandler.refuse(connectionSocket);
             }
         } catch (IOException ex) {
             System.err.println(ex);
@@ -50,42 +131,185 @@ public class Server {
         System.out.println("done.");
     }
 
+    /**
+     * start the selector based front end instead of one thread per client
+     *
+     * @param serverPort the server port
+     * @param workers    the workers that process the requests
+     */
+    private static void startNio(int serverPort, WorkerPool workers) {
+        int eventLoops = Integer.parseInt(ServerConfig.getProperty("server.nio.event-loops"));
+        int maxInFlight = Integer.parseInt(ServerConfig.getProperty("server.workers.max-in-flight"));
+        try {
+            new NioServer(serverPort, eventLoops, workers, maxInFlight).start();
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+        System.out.println("done.");
+    }
+
 }
 
 /**
  * The type Client handler.
+ * reads the requests of one client on one of the reader threads. with workers each request waits for one of them
+ * and a request that finds the queue full is answered with ServerBusyException, the reading stops while
+ * the client has too many requests running. requests with a requestId run together and may be answered
+ * out of order, the others and the ones that sign in run alone because the processor keeps the login
  */
 class ClientHandler implements Runnable {
 
     private final Socket connectionSocket;
+    private final ServerProcessor serverProcessor = new ServerProcessor();
+    //// null when the requests run on the thread of the client
+    private final WorkerPool workers;
+    private final int maxInFlight;
+    //// the workers write the responses of the client one at a time
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final JsonOutput responseOutput = new JsonOutput();
+    private BinaryOutput binaryOutput;
+    private OutputStream out;
+    //// made when the client asks for compression
+    private MessageDeflater deflater;
+    //// the requests on the workers, guarded by this
+    private int running;
 
     /**
      * Instantiates a new Client handler.
      *
      * @param connectionSocket the connection socket
+     * @param workers          the workers that run the requests or null to run them on this thread
+     * @param maxInFlight      the requests the client may have running before its reads stop
      */
-    public ClientHandler(Socket connectionSocket) {
+    public ClientHandler(Socket connectionSocket, WorkerPool workers, int maxInFlight) {
         this.connectionSocket = connectionSocket;
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * answer a connection that no worker can take and close it
+     *
+     * @param connectionSocket the connection socket
+     */
+    static void refuse(Socket connectionSocket) {
+        try (Socket socket = connectionSocket) {
+            JsonOutput responseOutput = new JsonOutput();
+            responseOutput.writeResponse(Server.busyResponse());
+            MessageFraming.writeMessage(socket.getOutputStream(), responseOutput.array(), 0, responseOutput.size());
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    //// a response goes back in the form of its request
+    private void respond(JSONObject response, boolean binary) throws IOException {
+        writeLock.lock();
+        try {
+            if (binary) {
+                if (binaryOutput == null)
+                    binaryOutput = new BinaryOutput();
+                binaryOutput.writeResponse(response);
+                send(binaryOutput.array(), binaryOutput.size());
+            } else {
+                responseOutput.writeResponse(response);
+                send(responseOutput.array(), responseOutput.size());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void send(byte[] response, int size) throws IOException {
+        if (serverProcessor.isCompressing()) {
+            if (deflater == null)
+                deflater = Server.newDeflater();
+            if (deflater.deflate(response, 0, size)) {
+                MessageFraming.writeMessage(out, deflater.array(), 0, deflater.size());
+                return;
+            }
+        }
+        MessageFraming.writeMessage(out, response, 0, size);
+    }
+
+    private void process(JSONObject request, boolean binary) {
+        try {
+            respond(serverProcessor.processRequest(request), binary);
+        } catch (IOException | RuntimeException e) {
+            System.err.println(e);
+            //// the reading thread sees the closed socket and ends the client
+            try {
+                connectionSocket.close();
+            } catch (IOException ex) {
+                System.err.println(ex);
+            }
+        } finally {
+            finished();
+        }
+    }
+
+    private synchronized void finished() {
+        running--;
+        notifyAll();
+    }
+
+    private synchronized void awaitRunning(int most) throws InterruptedIOException {
+        while (running > most) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while the requests of the client run");
+            }
+        }
+    }
+
+    private synchronized void started() {
+        running++;
     }
 
     @Override
     public void run() {
         try {
-            OutputStream out = connectionSocket.getOutputStream();
-            InputStream in = connectionSocket.getInputStream();
-            byte[] buffer = new byte[4096];
-            ServerProcessor serverProcessor = new ServerProcessor();
-            while (true) {
-                int read = in.read(buffer);
-                String str = new String(buffer, 0, read);
-                JSONObject jsonObject = new JSONObject(str);
-                JSONObject response = serverProcessor.processRequest(jsonObject);
-                out.write(response.toString().getBytes());
+            out = new BufferedOutputStream(connectionSocket.getOutputStream());
+            InputStream in = new BufferedInputStream(connectionSocket.getInputStream());
+            int maxMessageSize = Server.maxMessageSize();
+            byte[] message;
+            while ((message = MessageFraming.readMessage(in, maxMessageSize)) != null) {
+                //// each request is answered in its own form
+                boolean binary = BinaryInput.isBinary(message);
+                JSONObject request = binary ? BinaryInput.readRequest(message)
+                        : new JSONObject(new String(message, StandardCharsets.UTF_8));
+                if (workers == null) {
+                    respond(serverProcessor.processRequest(request), binary);
+                    continue;
+                }
+                boolean concurrent = ServerProcessor.isConcurrent(request);
+                awaitRunning(concurrent ? maxInFlight - 1 : 0);
+                started();
+                if (!workers.execute(() -> process(request, binary))) {
+                    finished();
+                    JSONObject busy = Server.busyResponse();
+                    busy.putOpt("requestId", request.opt("requestId"));
+                    respond(busy, binary);
+                    continue;
+                }
+                if (!concurrent)
+                    awaitRunning(0);
             }
 
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            //// the processor and the deflater are freed once no worker uses them
+            try {
+                awaitRunning(0);
+            } catch (InterruptedIOException e) {
+                System.err.println(e);
+            }
+            serverProcessor.close();
+            if (deflater != null)
+                deflater.end();
             try {
                 connectionSocket.close();
             } catch (IOException ex) {
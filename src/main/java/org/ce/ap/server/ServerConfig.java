@@ -9,7 +9,8 @@ import java.util.Properties;
 
 public class ServerConfig {
     private static Properties serverProperties;
-    private static Path path = Path.of("./src/main/resources/server-application.properties");
+    //// -Dserver.config=<file> runs the server with another configuration, the benchmarks use it
+    private static Path path = Path.of(System.getProperty("server.config", "./src/main/resources/server-application.properties"));
     static {
         try (InputStream input = new FileInputStream(path.toFile().getAbsoluteFile())){
 
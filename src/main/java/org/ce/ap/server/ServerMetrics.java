@@ -0,0 +1,128 @@
+package  org.ce.ap.server;
+
+import org.ce.ap.protocol.MessageDeflater;
+import  org.ce.ap.server.DataBase.LogDataBase;
+import  org.ce.ap.server.managers.TweetManager;
+import  org.ce.ap.server.model.tweet.Tweet;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The type Server metrics.
+ * the counters of the worker pool, the caches and the compression, read through jmx
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private final WorkerPool workers;
+    //// null when no pool reads the clients
+    private final WorkerPool readers;
+
+    /**
+     * Instantiates a new Server metrics.
+     *
+     * @param workers the worker pool
+     * @param readers the pool that reads the clients or null
+     */
+    public ServerMetrics(WorkerPool workers, WorkerPool readers) {
+        this.workers = workers;
+        this.readers = readers;
+    }
+
+    /**
+     * register the metrics of the pools in the platform mbean server
+     *
+     * @param workers the worker pool
+     * @param readers the pool that reads the clients or null
+     */
+    public static void register(WorkerPool workers, WorkerPool readers) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetrics(workers, readers),
+                    new ObjectName("org.ce.ap.server:type=ServerMetrics"));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return workers.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return workers.getQueueSize();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return workers.getActiveThreads();
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers.getThreads();
+    }
+
+    @Override
+    public long getRejected() {
+        return workers.getRejected();
+    }
+
+    @Override
+    public long getCompleted() {
+        return workers.getCompleted();
+    }
+
+    @Override
+    public int getConnections() {
+        return readers == null ? 0 : readers.getActiveThreads();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return readers == null ? 0 : readers.getThreads();
+    }
+
+    @Override
+    public long getRefusedConnections() {
+        return readers == null ? 0 : readers.getRejected();
+    }
+
+    @Override
+    public int getLoadedTweets() {
+        return TweetManager.getInstance().getLoadedCount();
+    }
+
+    @Override
+    public long getTweetJsonCacheHits() {
+        return Tweet.getCacheHits();
+    }
+
+    @Override
+    public long getTweetJsonCacheMisses() {
+        return Tweet.getCacheMisses();
+    }
+
+    @Override
+    public long getDroppedLogLines() {
+        return LogDataBase.getDroppedLines();
+    }
+
+    @Override
+    public long getCompressedResponses() {
+        return MessageDeflater.getMessages();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long compressed = MessageDeflater.getCompressedBytes();
+        return compressed == 0 ? 0 : (double) MessageDeflater.getRawBytes() / compressed;
+    }
+
+    @Override
+    public double getCompressionMicrosPerResponse() {
+        long messages = MessageDeflater.getMessages();
+        return messages == 0 ? 0 : MessageDeflater.getNanos() / 1000.0 / messages;
+    }
+}
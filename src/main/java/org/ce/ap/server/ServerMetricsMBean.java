@@ -0,0 +1,119 @@
+package  org.ce.ap.server;
+
+/**
+ * The interface Server metrics m bean.
+ * what jconsole or any jmx client sees under org.ce.ap.server:type=ServerMetrics
+ */
+public interface ServerMetricsMBean {
+    /**
+     * Gets queue depth.
+     *
+     * @return the number of requests or connections that wait for a worker
+     */
+    int getQueueDepth();
+
+    /**
+     * Gets queue size.
+     *
+     * @return the max queue depth
+     */
+    int getQueueSize();
+
+    /**
+     * Gets active workers.
+     *
+     * @return the number of workers that are busy
+     */
+    int getActiveWorkers();
+
+    /**
+     * Gets workers.
+     *
+     * @return the max number of workers
+     */
+    int getWorkers();
+
+    /**
+     * Gets rejected.
+     *
+     * @return the number of requests or connections answered with ServerBusyException
+     */
+    long getRejected();
+
+    /**
+     * Gets completed.
+     *
+     * @return the number of tasks the workers finished
+     */
+    long getCompleted();
+
+    /**
+     * Gets connections.
+     *
+     * @return the number of clients a reader thread serves in legacy mode
+     */
+    int getConnections();
+
+    /**
+     * Gets max connections.
+     *
+     * @return the max number of clients served at once in legacy mode
+     */
+    int getMaxConnections();
+
+    /**
+     * Gets refused connections.
+     *
+     * @return the number of clients answered with ServerBusyException because every reader was busy
+     */
+    long getRefusedConnections();
+
+    /**
+     * Gets loaded tweets.
+     *
+     * @return the number of tweets in the heap
+     */
+    int getLoadedTweets();
+
+    /**
+     * Gets tweet json cache hits.
+     *
+     * @return the number of tweets written from their cached json
+     */
+    long getTweetJsonCacheHits();
+
+    /**
+     * Gets tweet json cache misses.
+     *
+     * @return the number of tweets whose json was written again
+     */
+    long getTweetJsonCacheMisses();
+
+    /**
+     * Gets dropped log lines.
+     *
+     * @return the number of log lines dropped because the log buffer was full
+     */
+    long getDroppedLogLines();
+
+    /**
+     * Gets compressed responses.
+     *
+     * @return the number of responses that were deflated
+     */
+    long getCompressedResponses();
+
+    /**
+     * Gets compression ratio.
+     *
+     * @return the size of the deflated responses before over after compression
+     */
+    double getCompressionRatio();
+
+    /**
+     * Gets compression micros per response.
+     *
+     * @return the mean time to deflate a response
+     */
+    double getCompressionMicrosPerResponse();
+}
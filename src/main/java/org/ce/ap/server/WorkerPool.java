@@ -0,0 +1,200 @@
+package  org.ce.ap.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The type Worker pool.
+ * a fixed number of threads with a bounded queue in front of them, a task that does not fit
+ * is refused at once instead of waiting so the caller can answer that the server is busy.
+ * with virtual threads every task gets a new thread and only the number of running tasks is bounded
+ */
+public class WorkerPool {
+    private final ExecutorService executor;
+    //// null when the threads are virtual, they are not pooled
+    private final ThreadPoolExecutor pool;
+    //// the tasks that may still start on virtual threads, null for the pool
+    private final Semaphore permits;
+    private final int threads;
+    private final int queueSize;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * Instantiates a new Worker pool.
+     *
+     * @param name      the name of the threads
+     * @param threads   the max number of threads
+     * @param queueSize the max number of waiting tasks, 0 for none
+     */
+    public WorkerPool(String name, int threads, int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+        AtomicInteger count = new AtomicInteger();
+        //// without a queue a task runs at once on a free thread or is refused
+        BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize);
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //// the idle threads end so a quiet server does not keep all of them
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        permits = null;
+    }
+
+    private WorkerPool(ExecutorService virtualExecutor, int tasks) {
+        this.threads = tasks;
+        this.queueSize = 0;
+        executor = virtualExecutor;
+        pool = null;
+        permits = new Semaphore(tasks);
+    }
+
+    /**
+     * the pool of the configuration
+     *
+     * @param name the name of the threads
+     * @return the worker pool
+     */
+    public static WorkerPool create(String name) {
+        return new WorkerPool(name, Integer.parseInt(ServerConfig.getProperty("server.workers.threads")),
+                Integer.parseInt(ServerConfig.getProperty("server.workers.queue-size")));
+    }
+
+    /**
+     * the threads that read the clients in legacy mode, one for each client and none waits, so
+     * the client after the last one is refused at once
+     *
+     * @param name the name of the threads
+     * @return the worker pool
+     */
+    public static WorkerPool createReaders(String name) {
+        return new WorkerPool(name, Integer.parseInt(ServerConfig.getProperty("server.workers.max-connections")), 0);
+    }
+
+    /**
+     * a thread per task with virtual threads, they are looked up at run time so the server
+     * still builds and runs on java 11, there the configured pool is used instead
+     *
+     * @param name the name of the threads of the pool that replaces them
+     * @return the worker pool
+     */
+    public static WorkerPool createVirtual(String name) {
+        int tasks = Integer.parseInt(ServerConfig.getProperty("server.workers.virtual-tasks"));
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new WorkerPool(executor, tasks);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("virtual threads need java 21, " + name + " uses platform threads");
+            return create(name);
+        }
+    }
+
+    /**
+     * Execute boolean.
+     *
+     * @param task the task
+     * @return false if the queue is full and the task is not run
+     */
+    public boolean execute(Runnable task) {
+        if (permits != null)
+            return executeVirtual(task);
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+    }
+
+    private boolean executeVirtual(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                completed.increment();
+                permits.release();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Is virtual boolean.
+     *
+     * @return true if every task gets a virtual thread
+     */
+    public boolean isVirtual() {
+        return permits != null;
+    }
+
+    /**
+     * Gets queue depth.
+     *
+     * @return the number of waiting tasks
+     */
+    public int getQueueDepth() {
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    /**
+     * Gets queue size.
+     *
+     * @return the max number of waiting tasks
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Gets active threads.
+     *
+     * @return the number of threads running a task
+     */
+    public int getActiveThreads() {
+        return pool == null ? threads - permits.availablePermits() : pool.getActiveCount();
+    }
+
+    /**
+     * Gets threads.
+     *
+     * @return the max number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets rejected.
+     *
+     * @return the number of refused tasks
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets completed.
+     *
+     * @return the number of finished tasks
+     */
+    public long getCompleted() {
+        return pool == null ? completed.sum() : pool.getCompletedTaskCount();
+    }
+}
@@ -0,0 +1,138 @@
+package  org.ce.ap.server.managers;
+
+import  org.ce.ap.server.model.tweet.Tweet;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The type Tweet cache.
+ * the tweets that are loaded from the log. a tweet is found here as long as anything holds it,
+ * so there is never a second object of the same tweet, and the cache itself holds only the
+ * recently used ones up to its capacity
+ */
+class TweetCache {
+    //// the recently used tweets are split so the readers of different tweets rarely wait for each other
+    private static final int SEGMENTS = 16;
+    private final ConcurrentHashMap<Long, TweetReference> references = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Tweet> collected = new ReferenceQueue<>();
+    private final RecentTweets[] recent = new RecentTweets[SEGMENTS];
+
+    /**
+     * Instantiates a new Tweet cache.
+     *
+     * @param capacity the number of recently used tweets that are kept
+     */
+    TweetCache(int capacity) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            recent[i] = new RecentTweets(Math.max(1, capacity / SEGMENTS));
+        }
+    }
+
+    /**
+     * Get tweet.
+     *
+     * @param id the id
+     * @return the tweet or null if it is not loaded
+     */
+    Tweet get(long id) {
+        TweetReference reference = references.get(id);
+        Tweet tweet = reference == null ? null : reference.get();
+        if (tweet != null)
+            touch(tweet);
+        return tweet;
+    }
+
+    /**
+     * Put a loaded or a new tweet.
+     *
+     * @param tweet the tweet
+     */
+    void put(Tweet tweet) {
+        expunge();
+        references.put(tweet.getId(), new TweetReference(tweet, collected));
+        touch(tweet);
+    }
+
+    /**
+     * Remove a tweet.
+     *
+     * @param id the id
+     */
+    void remove(long id) {
+        references.remove(id);
+        segment(id).remove(id);
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the number of tweets in the heap
+     */
+    int size() {
+        expunge();
+        return references.size();
+    }
+
+    private void touch(Tweet tweet) {
+        segment(tweet.getId()).touch(tweet);
+    }
+
+    private RecentTweets segment(long id) {
+        return recent[(int) (id & (SEGMENTS - 1))];
+    }
+
+    /**
+     * drop the ids of the tweets that the garbage collector took
+     */
+    private void expunge() {
+        Reference<? extends Tweet> reference;
+        while ((reference = collected.poll()) != null) {
+            TweetReference tweetReference = (TweetReference) reference;
+            references.remove(tweetReference.id, tweetReference);
+        }
+    }
+
+    /**
+     * The type Tweet reference.
+     */
+    private static class TweetReference extends WeakReference<Tweet> {
+        private final long id;
+
+        private TweetReference(Tweet tweet, ReferenceQueue<Tweet> queue) {
+            super(tweet, queue);
+            this.id = tweet.getId();
+        }
+    }
+
+    /**
+     * The type Recent tweets.
+     * the least recently used tweet is dropped when it is full
+     */
+    private static class RecentTweets {
+        private final int capacity;
+        //// in the order of access, the first is the least recently used
+        private final LinkedHashMap<Long, Tweet> tweets = new LinkedHashMap<>(16, 0.75f, true);
+
+        private RecentTweets(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized void touch(Tweet tweet) {
+            tweets.put(tweet.getId(), tweet);
+            if (tweets.size() > capacity) {
+                Iterator<Long> eldest = tweets.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        private synchronized void remove(long id) {
+            tweets.remove(id);
+        }
+    }
+}
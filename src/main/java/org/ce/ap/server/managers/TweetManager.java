@@ -1,11 +1,16 @@
 package  org.ce.ap.server.managers;
 
+import  org.ce.ap.server.ServerConfig;
 import  org.ce.ap.server.exceptions.*;
 import  org.ce.ap.server.DataBase.TweetDataBase;
+import  org.ce.ap.server.DataBase.TweetHeader;
 
 import  org.ce.ap.server.model.tweet.Retweet;
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.tweet.TweetIds;
+import  org.ce.ap.server.model.tweet.TweetKey;
 import  org.ce.ap.server.model.user.User;
+import  org.ce.ap.server.model.user.UserIds;
 import  org.ce.ap.server.services.observer.Publisher;
 import  org.ce.ap.server.services.observer.Subscriber;
 import org.json.JSONArray;
@@ -13,24 +18,52 @@ import org.json.JSONObject;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * The type Tweet manager.
+ * only the keys of the tweets are kept for all of them, a tweet is read from the log the
+ * first time it is asked for and the least recently used ones are left to the garbage collector
  */
 public class TweetManager extends Publisher implements Subscriber {
     private UserManager userManager;
-    private static TweetManager instance;
     private TweetDataBase database;
-    private static HashMap<Long, Tweet> tweets;
-    private static HashMap<String, HashSet<Tweet>> userToTweets;
+    private static ConcurrentHashMap<Long, TweetKey> tweets;
+    private static ConcurrentHashMap<String, ConcurrentSkipListSet<TweetKey>> userToTweets;
+    //// the same keys from the newest, for the questions about a time
+    private static ConcurrentSkipListSet<TweetKey> byTime;
+    private final TweetCache cache;
+    private final TweetSearchIndex search = new TweetSearchIndex();
+    //// the likes, replies and retweets of a tweet are changed and logged under one of these
+    private final ReentrantLock[] stripes = new ReentrantLock[64];
+    //// a tweet is read from the log under one of these so it is read once
+    private final ReentrantLock[] loadStripes = new ReentrantLock[64];
 
 
     private TweetManager() {
         userManager = UserManager.getInstance();
-        database = new TweetDataBase();
-        tweets = new HashMap<>();
-        userToTweets = new HashMap<>();
+        database = TweetDataBase.create();
+        tweets = new ConcurrentHashMap<>();
+        userToTweets = new ConcurrentHashMap<>();
+        byTime = new ConcurrentSkipListSet<>();
+        cache = new TweetCache(Integer.parseInt(ServerConfig.getProperty("server.tweets.cache-size")));
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+            loadStripes[i] = new ReentrantLock();
+        }
+        getDataFromDatabase();
+        indexTexts();
+    }
+
+    /**
+     * the instance is made once by the class loader when it is first asked for
+     */
+    private static class Holder {
+        private static final TweetManager INSTANCE = new TweetManager();
     }
 
     /**
@@ -39,93 +72,169 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the tweet manager
      */
     public static TweetManager getInstance() {
-        if (instance == null)
-            instance = new TweetManager();
-        System.out.println(tweets.size());
-        return instance;
+        return Holder.INSTANCE;
     }
 
     /**
-     * get data from database
+     * the lock of a tweet, the tweets share a few locks so no lock is kept per tweet
      *
-     * @param user the user
-     * @return the data from database
-     * @throws InvalidUsernameException the invalid username exception
-     */
-    public ArrayList<Tweet> getDataFromDatabase(User user) throws InvalidUsernameException {
-        HashMap<Long, JSONObject> tweetJsonList = database.getDirectoryFiles(user);
-        System.out.println(tweetJsonList.size());
-        for (Long tweetID : tweetJsonList.keySet()) {
-            if (tweets.containsKey(tweetID))
+     * @param tweet the tweet
+     * @return the lock
+     */
+    public Lock lockOf(Tweet tweet) {
+        return stripes[(int) (tweet.getId() & (stripes.length - 1))];
+    }
+
+    /**
+     * index the tweet log, the tweets themselves are read when they are first asked for
+     */
+    private void getDataFromDatabase() {
+        for (TweetHeader header : database.readIndex()) {
+            try {
+                getAuthor(header.getAuthor());
+            } catch (InvalidUsernameException e) {
+                System.err.println("skip the tweet of an unknown user " + header.getAuthor());
                 continue;
-            JSONObject tweet = tweetJsonList.get(tweetID);
-            if (tweet.keySet().contains("retweetedTweet") && tweet.keySet().contains("newTweet")) {
-                JSONObject retweetedTweetJson = (JSONObject) tweet.get("retweetedTweet");
-                long retweetedID = retweetedTweetJson.getLong("id");
-
-                if (tweets.containsKey(retweetedID)) {
-                    Retweet retweet = new Retweet(tweet, getAuthor(((JSONObject) tweet.get("retweetedTweet")).getString("author")), tweets.get(retweetedID));
-                    tweets.put(tweetID, retweet);
-                    addToUserToTweets(retweet);
-                } else {
-                    Tweet retweetedTweet = new Tweet(retweetedTweetJson, getAuthor(((JSONObject) tweet.get("retweetedTweet")).getString("author")));
-                    tweets.put(retweetedTweet.getId(), retweetedTweet);
-                    addToUserToTweets(retweetedTweet);
-                    Retweet retweet1 = new Retweet(tweet, getAuthor(((JSONObject) tweet.get("retweetedTweet")).getString("author")), retweetedTweet);
-                    tweets.put(tweetID, retweet1);
-                    addToUserToTweets(retweet1);
-                    addReplies(retweetedTweetJson);
-                    addLikes(retweetedTweetJson);
+            }
+            TweetKey key = new TweetKey(header.getSendDate(), header.getId());
+            tweets.put(header.getId(), key);
+            byTime.add(key);
+            TweetIds.observe(header.getId());
+            userToTweets.computeIfAbsent(header.getAuthor(), username -> new ConcurrentSkipListSet<>()).add(key);
+        }
+        System.out.println("tweets count is :" + tweets.size());
+    }
+
+    /**
+     * read the search index from its snapshot and index the texts of the tweets it does not cover
+     */
+    private void indexTexts() {
+        long start = System.currentTimeMillis();
+        long[] covered = search.readSnapshot(tweets::containsKey);
+        long[] missing = tweets.keySet().stream()
+                .mapToLong(Long::longValue)
+                .filter(id -> Arrays.binarySearch(covered, id) < 0)
+                .sorted()
+                .toArray();
+        for (long id : missing) {
+            TweetKey key = tweets.get(id);
+            JSONObject json = key == null ? null : database.read(id);
+            if (json != null)
+                search.add(key, (json.has("newTweet") ? json.getJSONObject("newTweet") : json).optString("text"));
+        }
+        System.out.println("search index of " + search.wordsCount() + " words, " + missing.length
+                + " tweets indexed from the log in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * read a tweet from the log, a retweet needs its retweeted tweet first and that is
+     * loaded outside of the lock so a thread never waits for two of these locks
+     *
+     * @param id the id
+     * @return the tweet or null if it is removed
+     */
+    private Tweet load(long id) {
+        Tweet retweetedTweet = null;
+        while (true) {
+            JSONObject retweetedTweetJson;
+            ReentrantLock lock = loadStripes[(int) (id & (loadStripes.length - 1))];
+            lock.lock();
+            try {
+                Tweet tweet = cache.get(id);
+                if (tweet != null)
+                    return tweet;
+                //// a tweet that is not in the cache is not held by anyone so all of its changes are in the log
+                JSONObject json = database.read(id);
+                if (json == null)
+                    return null;
+                try {
+                    if (!json.has("retweetedTweet") || !json.has("newTweet")) {
+                        tweet = makeTweet(json);
+                        cache.put(tweet);
+                        return tweet;
+                    }
+                    retweetedTweetJson = json.getJSONObject("retweetedTweet");
+                    if (retweetedTweet != null && retweetedTweet.getId() == retweetedTweetJson.getLong("id")) {
+                        tweet = makeRetweet(json, retweetedTweet);
+                        cache.put(tweet);
+                        return tweet;
+                    }
+                } catch (InvalidUsernameException e) {
+                    System.err.println("skip the tweet of an unknown user");
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            retweetedTweet = findTweet(retweetedTweetJson.getLong("id"));
+            if (retweetedTweet == null) {
+                try {
+                    retweetedTweet = makeTweet(retweetedTweetJson);
+                } catch (InvalidUsernameException e) {
+                    System.err.println("skip a retweet of an unknown user");
+                    return null;
                 }
-            } else {
-                Tweet tweet1 = new Tweet(tweet, getAuthor(tweet.getString("author")));
-                tweets.put(tweetID, tweet1);
-                addToUserToTweets(tweet1);
             }
-            addReplies(tweet);
-            addLikes(tweet);
         }
-        System.out.println("FOLLOWINGS");
-        System.out.println((user.getFollowings()));
+    }
 
-        return getTimeline(user);
+    private Retweet makeRetweet(JSONObject tweet, Tweet retweetedTweet) throws InvalidUsernameException {
+        JSONObject newTweetJson = tweet.getJSONObject("newTweet");
+        Retweet retweet = new Retweet(tweet, getAuthor(newTweetJson.getString("author")), retweetedTweet);
+        addReplies(retweet, newTweetJson);
+        addLikes(retweet, newTweetJson);
+        return retweet;
     }
 
-    public ArrayList<Tweet> getTimeline(User user){
-        ArrayList<Tweet> tweetArrayList = new ArrayList<>();
-        for (User us : user.getFollowings()) {
-            if (userToTweets.get(us.getUsername()) == null) {
+    private Tweet makeTweet(JSONObject tweet) throws InvalidUsernameException {
+        Tweet tweet1 = new Tweet(tweet, getAuthor(tweet.getString("author")));
+        addReplies(tweet1, tweet);
+        addLikes(tweet1, tweet);
+        return tweet1;
+    }
+
+    /**
+     * a page of the user's timeline, each following's tweets are already sorted so only
+     * the heads are merged and the cost depends on the page size not the history
+     *
+     * @param user  the user
+     * @param after the last tweet of the previous page or null for the first page
+     * @param limit the max number of tweets
+     * @return the tweets from the newest
+     */
+    public ArrayList<Tweet> getTimeline(User user, TweetKey after, int limit) {
+        PriorityQueue<TimelineHead> heads = new PriorityQueue<>();
+        for (int followingId : user.getFollowingIds()) {
+            NavigableSet<TweetKey> authorTweets = userToTweets.get(UserIds.get(followingId).getUsername());
+            if (authorTweets == null)
                 continue;
-            }
-            tweetArrayList.addAll(userToTweets.get(us.getUsername()));
+            Iterator<TweetKey> iterator = page(authorTweets, after).iterator();
+            if (iterator.hasNext())
+                heads.add(new TimelineHead(iterator));
+        }
+        ArrayList<Tweet> tweetArrayList = new ArrayList<>(Math.min(limit, 64));
+        while (tweetArrayList.size() < limit && !heads.isEmpty()) {
+            TimelineHead head = heads.poll();
+            Tweet tweet = findTweet(head.key.getId());
+            if (tweet != null)
+                tweetArrayList.add(tweet);
+            if (head.next())
+                heads.add(head);
         }
         return tweetArrayList;
     }
-    private void addReplies(JSONObject tweet) throws InvalidUsernameException {
-        JSONArray jsonArray;
-        if (tweet.keySet().contains("retweetedTweet")) {
-            jsonArray = (JSONArray) ((JSONObject) tweet.get("retweetedTweet")).get("replies");
-        } else {
-            jsonArray = (JSONArray) tweet.get("replies");
-        }
+
+    private void addReplies(Tweet tweet, JSONObject tweetJson) throws InvalidUsernameException {
+        JSONArray jsonArray = tweetJson.getJSONArray("replies");
         for (int i = 0; i < jsonArray.length(); i++) {
-            JSONObject reply = (JSONObject) jsonArray.get(i);
-            tweets.get(tweet.getLong("id")).addNewReply(new Tweet(reply, getAuthor(reply.getString("author"))));
-            addReplies(reply);
-            addLikes(reply);
+            tweet.addNewReply(makeTweet(jsonArray.getJSONObject(i)));
         }
-
     }
 
-    private void addLikes(JSONObject tweet) throws InvalidUsernameException {
-        JSONArray jsonArray;
-        if (tweet.keySet().contains("retweetedTweet")) {
-            jsonArray = (JSONArray) ((JSONObject) tweet.get("retweetedTweet")).get("likes");
-        } else {
-            jsonArray = (JSONArray) tweet.get("likes");
-        }
+    private void addLikes(Tweet tweet, JSONObject tweetJson) throws InvalidUsernameException {
+        JSONArray jsonArray = tweetJson.getJSONArray("likes");
         for (int i = 0; i < jsonArray.length(); i++) {
-            tweets.get(tweet.getLong("id")).likeTweet(getAuthor(String.valueOf(jsonArray.get(i))));
+            tweet.likeTweet(getAuthor(jsonArray.getString(i)));
         }
     }
 
@@ -137,32 +246,27 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the array list
      */
     public ArrayList<Tweet> addToUserToTweets(Tweet tweet) {
-        String username = tweet.getAuthor().getUsername();
-        if (userToTweets.containsKey(username)) {
-            HashSet<Tweet> tweets = userToTweets.get(username);
-            tweets.add(tweet);
-            userToTweets.replace(username, tweets);
-        } else {
-            HashSet<Tweet> tweets = new HashSet<>();
-            tweets.add(tweet);
-            userToTweets.put(username, tweets);
-        }
-        return HashSetToArrayList(username);
+        indexTweet(tweet);
+        return HashSetToArrayList(tweet.getAuthor().getUsername());
+    }
+
+    private void indexTweet(Tweet tweet) {
+        tweets.put(tweet.getId(), tweet.getKey());
+        byTime.add(tweet.getKey());
+        userToTweets.computeIfAbsent(tweet.getAuthor().getUsername(), username -> new ConcurrentSkipListSet<>())
+                .add(tweet.getKey());
     }
 
     /**
      * Remove from user to tweets.
      *
      * @param tweet the tweet
-     * @return the array list
      */
-    public ArrayList<Tweet> removeFromUserToTweets(Tweet tweet) {
+    public void removeFromUserToTweets(Tweet tweet) {
         String username = tweet.getAuthor().getUsername();
-        HashSet<Tweet> tweets;
-        tweets = userToTweets.get(username);
-        tweets.remove(tweet);
-        userToTweets.replace(username, tweets);
-        return HashSetToArrayList(username);
+        NavigableSet<TweetKey> authorTweets = userToTweets.get(username);
+        if (authorTweets != null)
+            authorTweets.remove(tweet.getKey());
     }
 
     /**
@@ -172,8 +276,19 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the array list
      */
     public ArrayList<Tweet> HashSetToArrayList(String username) {
-        HashSet<Tweet> tweets = userToTweets.get(username);
-        return new ArrayList<>(tweets);
+        return findTweets(userToTweets.get(username));
+    }
+
+    private ArrayList<Tweet> findTweets(Collection<TweetKey> keys) {
+        ArrayList<Tweet> tweetArrayList = new ArrayList<>();
+        if (keys == null)
+            return tweetArrayList;
+        for (TweetKey key : keys) {
+            Tweet tweet = findTweet(key.getId());
+            if (tweet != null)
+                tweetArrayList.add(tweet);
+        }
+        return tweetArrayList;
     }
 
     private User getAuthor(String username) throws InvalidUsernameException {
@@ -187,27 +302,104 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return tweet array list
      */
     public ArrayList findTweetsByAuthor(User author) {
-        String username = author.getUsername();
-        return (userToTweets.get(username)==null)?new ArrayList<Tweet>():new ArrayList<Tweet>(userToTweets.get(username));
+        return findTweets(userToTweets.get(author.getUsername()));
+    }
+
+    /**
+     * a page of the author's tweets from the newest
+     *
+     * @param author the author
+     * @param after  the last tweet of the previous page or null for the first page
+     * @param limit  the max number of tweets
+     * @return tweet array list
+     */
+    public ArrayList<Tweet> findTweetsByAuthor(User author, TweetKey after, int limit) {
+        ArrayList<Tweet> tweetArrayList = new ArrayList<>();
+        NavigableSet<TweetKey> authorTweets = userToTweets.get(author.getUsername());
+        if (authorTweets == null)
+            return tweetArrayList;
+        for (TweetKey key : page(authorTweets, after)) {
+            if (tweetArrayList.size() == limit)
+                break;
+            Tweet tweet = findTweet(key.getId());
+            if (tweet != null)
+                tweetArrayList.add(tweet);
+        }
+        return tweetArrayList;
+    }
+
+    /**
+     * the keys of the author's tweets from the newest, the tweets are not read
+     *
+     * @param author the author
+     * @return a view of the keys that follows the new and removed tweets
+     */
+    public NavigableSet<TweetKey> findKeysByAuthor(User author) {
+        NavigableSet<TweetKey> authorTweets = userToTweets.get(author.getUsername());
+        return authorTweets == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(authorTweets);
+    }
+
+    private SortedSet<TweetKey> page(NavigableSet<TweetKey> authorTweets, TweetKey after) {
+        return after == null ? authorTweets : authorTweets.tailSet(after, false);
     }
 
     /**
      * Find tweets by time array list.
      *
      * @param date is using for finding tweets by time
-     * @return tweet array list
+     * @return tweet array list from the newest
      * @throws InvalidDateException if the date is invalid
      */
     public ArrayList findTweetsByTime(LocalDateTime date) throws InvalidDateException {
         checkDate(date);
+        return findTweets(findKeysByTime(date, LocalDateTime.MAX));
+    }
+
+    /**
+     * a page of the tweets sent in a time range from the newest
+     *
+     * @param from  the tweets sent after it
+     * @param to    the tweets sent at it or before it
+     * @param after the last tweet of the previous page or null for the first page
+     * @param limit the max number of tweets
+     * @return tweet array list
+     */
+    public ArrayList<Tweet> findTweetsByTime(LocalDateTime from, LocalDateTime to, TweetKey after, int limit) {
         ArrayList<Tweet> tweetArrayList = new ArrayList<>();
-        for (Tweet tweet1 : tweets.values()) {
-            if (tweet1.getSendDate().isAfter(date))
-                tweetArrayList.add(tweet1);
+        for (TweetKey key : keysByTime(from, to, after)) {
+            if (tweetArrayList.size() == limit)
+                break;
+            Tweet tweet = findTweet(key.getId());
+            if (tweet != null)
+                tweetArrayList.add(tweet);
         }
         return tweetArrayList;
     }
 
+    /**
+     * the keys of the tweets sent in a time range from the newest. it is a view of the index, it is
+     * found in logarithmic time and follows the tweets that are added and removed
+     *
+     * @param from the tweets sent after it
+     * @param to   the tweets sent at it or before it
+     * @return the keys
+     */
+    public NavigableSet<TweetKey> findKeysByTime(LocalDateTime from, LocalDateTime to) {
+        return keysByTime(from, to, null);
+    }
+
+    private NavigableSet<TweetKey> keysByTime(LocalDateTime from, LocalDateTime to, TweetKey after) {
+        //// the newest first, so the largest id is the first key of a time
+        TweetKey first = new TweetKey(to, Long.MAX_VALUE);
+        TweetKey end = new TweetKey(from, Long.MAX_VALUE);
+        boolean inclusive = after == null || after.compareTo(first) < 0;
+        if (!inclusive)
+            first = after;
+        if (first.compareTo(end) >= 0)
+            return Collections.emptyNavigableSet();
+        return byTime.subSet(first, inclusive, end, false);
+    }
+
     /**
      * @param date is the given date
      * @throws InvalidDateException if the date is invalid
@@ -218,13 +410,35 @@ public class TweetManager extends Publisher implements Subscriber {
         }
     }
 
+    /**
+     * the newest tweets whose texts have every word of the query
+     *
+     * @param query the words
+     * @param after the last tweet of the previous page or null for the first page
+     * @param limit the max number of tweets
+     * @return tweet array list
+     */
+    public ArrayList<Tweet> searchTweets(String query, TweetKey after, int limit) {
+        long[] ids = search.search(query, after, limit, tweets::containsKey);
+        ArrayList<Tweet> tweetArrayList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Tweet tweet = findTweet(id);
+            if (tweet != null)
+                tweetArrayList.add(tweet);
+        }
+        return tweetArrayList;
+    }
+
     /**
      * Add new tweet.
      *
      * @param tweet is using for adding the tweet
      */
     public void addNewTweet(Tweet tweet) {
-        tweets.put(tweet.getId(), tweet);
+        cache.put(tweet);
+        //// before the tweet is in the map, so a snapshot that covers it has its words
+        search.add(tweet.getKey(), tweet.getText());
+        indexTweet(tweet);
         database.writeFile(String.valueOf(tweet.getId()), tweet.getAuthor().getUsername(), tweet.toJson());
         notify(tweet, true);
     }
@@ -237,7 +451,10 @@ public class TweetManager extends Publisher implements Subscriber {
      */
     public void removeTweet(Tweet tweet, User user) {
         if (user.equals(tweet.getAuthor())) {
-            tweets.remove(tweet);
+            tweets.remove(tweet.getId());
+            byTime.remove(tweet.getKey());
+            removeFromUserToTweets(tweet);
+            cache.remove(tweet.getId());
             notify(tweet, false);
             database.removeFile(String.valueOf(tweet.getId()), tweet.getAuthor().getUsername());
         } else
@@ -251,7 +468,7 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the tweets
      */
     public ArrayList<Tweet> getTweets() {
-        return new ArrayList<>(tweets.values());
+        return findTweets(tweets.values());
     }
 
     /**
@@ -261,9 +478,19 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the tweet
      */
     public Tweet findTweet(Long id) {
-        if (tweets.containsKey(id))
-            return tweets.get(id);
-        return null;
+        Tweet tweet = cache.get(id);
+        if (tweet != null || !tweets.containsKey(id))
+            return tweet;
+        return load(id);
+    }
+
+    /**
+     * Gets loaded count.
+     *
+     * @return the number of tweets in the heap
+     */
+    public int getLoadedCount() {
+        return cache.size();
     }
 
     /**
@@ -273,25 +500,85 @@ public class TweetManager extends Publisher implements Subscriber {
      * @return the boolean
      */
     public boolean isNotExistID(long id) {
-        if (findTweet(id) == null)
-            return true;
-        return false;
+        return !tweets.containsKey(id);
     }
 
     /**
      * Make id .
      *
-     * @return the long
+     * @return a new id that is larger than every id made before on this node
      */
     public long makeID() {
-        Random rand = new Random();
-        long id;
-        do {
-            id = Math.abs(rand.nextLong());
-        } while (!isNotExistID(id) || id == 0);
-        return id;
+        return TweetIds.next();
+    }
+
+
+    /**
+     * save a like or dislike of a tweet
+     *
+     * @param tweet the tweet
+     * @param user  the liker
+     * @param state true for like and false for dislike
+     */
+    public void updateLike(Tweet tweet, User user, boolean state) {
+        database.appendLike(tweet.getId(), user.getUsername(), state);
+    }
+
+    /**
+     * save a new or removed reply of a tweet
+     *
+     * @param tweet      the tweet
+     * @param replyTweet the reply
+     * @param state      true for a new reply and false for a removed one
+     */
+    public void updateReply(Tweet tweet, Tweet replyTweet, boolean state) {
+        if (state)
+            database.appendReply(tweet.getId(), replyTweet.toJson());
+        else
+            database.appendRemoveReply(tweet.getId(), replyTweet.getId());
     }
 
+    /**
+     * save a new or removed retweet of a tweet
+     *
+     * @param tweet   the retweeted tweet
+     * @param retweet the retweet
+     * @param state   true for a new retweet and false for a removed one
+     */
+    public void updateRetweet(Tweet tweet, Retweet retweet, boolean state) {
+        if (state) {
+            JSONObject retweetJson = new JSONObject();
+            retweetJson.put("user", retweet.getAuthor().toString());
+            retweetJson.put("text", retweet.getText());
+            retweetJson.put("sendDate", retweet.getSendDate().toString());
+            retweetJson.put("id", retweet.getId());
+            database.appendRetweet(tweet.getId(), retweetJson);
+        } else
+            database.appendRemoveRetweet(tweet.getId(), retweet.getId());
+    }
+
+    /**
+     * the tweets this thread writes until endBatch are flushed together
+     */
+    public void beginBatch() {
+        database.beginBatch();
+    }
+
+    /**
+     * End batch.
+     */
+    public void endBatch() {
+        database.endBatch();
+    }
+
+    /**
+     * write the index of the tweet log and the search index to their snapshots
+     */
+    public void writeSnapshot() {
+        database.writeSnapshot();
+        //// the keys are taken first, the lists have the words of all of them
+        search.writeSnapshot(new ArrayList<>(tweets.values()), tweets::containsKey);
+    }
 
     @Override
     public void update(Tweet tweet, Boolean state) {
@@ -300,9 +587,43 @@ public class TweetManager extends Publisher implements Subscriber {
         else
             database.removeFile(String.valueOf(tweet.getId()), tweet.getAuthor().getUsername());
     }
-
-
 }
 
+/**
+ * The type Timeline head.
+ * the newest tweet of a following that is not taken yet
+ */
+class TimelineHead implements Comparable<TimelineHead> {
+    /**
+     * The Key.
+     */
+    TweetKey key;
+    private final Iterator<TweetKey> rest;
 
+    /**
+     * Instantiates a new Timeline head.
+     *
+     * @param tweets the tweets of a following from the newest, it should not be empty
+     */
+    TimelineHead(Iterator<TweetKey> tweets) {
+        this.rest = tweets;
+        this.key = tweets.next();
+    }
 
+    /**
+     * move to the next tweet of the following
+     *
+     * @return false if there is no more tweet
+     */
+    boolean next() {
+        if (!rest.hasNext())
+            return false;
+        key = rest.next();
+        return true;
+    }
+
+    @Override
+    public int compareTo(TimelineHead o) {
+        return key.compareTo(o.key);
+    }
+}
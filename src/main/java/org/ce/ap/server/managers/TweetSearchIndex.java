@@ -0,0 +1,370 @@
+package  org.ce.ap.server.managers;
+
+import  org.ce.ap.server.DataBase.SnapshotDataBase;
+import  org.ce.ap.server.model.tweet.TweetKey;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * The type Tweet search index.
+ * the words of the tweets' texts, each with the send times and ids of the tweets that have it in the
+ * order of their keys so the newest are at the end. the ids alone are not in the order of time, the
+ * random ids of the old tweets are mostly larger than the new ones. a removed tweet stays in the
+ * lists until the next snapshot and the searches skip it. the snapshot has the keys of the tweets
+ * it covers and the lists as places in them, so a start reads only the texts of the tweets that
+ * came after it
+ */
+class TweetSearchIndex {
+    private static final int SNAPSHOT_VERSION = 2;
+    //// a longer word is cut, a link or a long hashtag is still found by its beginning
+    private static final int MAX_WORD_LENGTH = 32;
+    private static final long[] NONE = new long[0];
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+    private final SnapshotDataBase snapshot = new SnapshotDataBase("search.snapshot", SNAPSHOT_VERSION);
+
+    /**
+     * the distinct words of a text, the letters and digits between the other characters in lower case
+     *
+     * @param text the text
+     * @return the words
+     */
+    static ArrayList<String> words(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        if (text == null)
+            return words;
+        StringBuilder word = new StringBuilder();
+        int i = 0;
+        while (i <= text.length()) {
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() < MAX_WORD_LENGTH)
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                continue;
+            }
+            if (word.length() > 0) {
+                String found = word.toString();
+                if (!words.contains(found))
+                    words.add(found);
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * index the text of a tweet, a tweet that is already indexed is not added twice
+     *
+     * @param key  the key of the tweet
+     * @param text the text
+     */
+    void add(TweetKey key, String text) {
+        long time = time(key.getSendDate());
+        for (String word : words(text)) {
+            postings.computeIfAbsent(word, found -> new Postings()).add(time, key.getId());
+        }
+    }
+
+    /**
+     * the newest tweets that have every word of the query
+     *
+     * @param query  the query
+     * @param before the tweets are older than this, or null for the newest
+     * @param limit  the max number of ids
+     * @param live   whether a tweet is not removed
+     * @return the ids from the newest
+     */
+    long[] search(String query, TweetKey before, int limit, LongPredicate live) {
+        ArrayList<String> words = words(query);
+        if (words.isEmpty() || limit <= 0)
+            return NONE;
+        Slice[] lists = new Slice[words.size()];
+        for (int i = 0; i < lists.length; i++) {
+            Postings list = postings.get(words.get(i));
+            if (list == null)
+                return NONE;
+            lists[i] = list.current;
+        }
+        //// the shortest list gives the candidates and the others are searched for them
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+        Slice shortest = lists[0];
+        //// the candidates come in descending order so a list is searched below the last candidate found in it
+        int[] ends = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            ends[i] = lists[i].size;
+        }
+        int at = shortest.size - 1;
+        if (before != null) {
+            at = find(shortest, shortest.size, time(before.getSendDate()), before.getId());
+            at = at >= 0 ? at - 1 : -at - 2;
+        }
+        long[] found = new long[Math.min(limit, at + 1)];
+        int count = 0;
+        for (; at >= 0 && count < found.length; at--) {
+            long time = shortest.times[at];
+            long id = shortest.ids[at];
+            boolean inAll = true;
+            for (int i = 1; i < lists.length && inAll; i++) {
+                int position = find(lists[i], ends[i], time, id);
+                inAll = position >= 0;
+                ends[i] = inAll ? position : -position - 1;
+            }
+            if (inAll && live.test(id))
+                found[count++] = id;
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    //// the place of a tweet in the first entries of a list, like Arrays.binarySearch
+    private static int find(Slice list, int size, long time, long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compare(list.times[middle], list.ids[middle], time, id);
+            if (compare < 0)
+                low = middle + 1;
+            else if (compare > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    //// older tweets first, the opposite of the order of TweetKey
+    private static int compare(long time, long id, long otherTime, long otherId) {
+        int compare = Long.compare(time, otherTime);
+        return compare != 0 ? compare : Long.compare(id, otherId);
+    }
+
+    //// the nanoseconds of a send date, it keeps the order of the dates until the year 2262
+    private static long time(LocalDateTime sendDate) {
+        return sendDate.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + sendDate.getNano();
+    }
+
+    /**
+     * Words count.
+     *
+     * @return the number of distinct words
+     */
+    int wordsCount() {
+        return postings.size();
+    }
+
+    /**
+     * read the lists from the snapshot without the tweets that are removed since
+     *
+     * @param live whether a tweet is not removed
+     * @return the ids of the tweets the snapshot covers in ascending order, empty if there is no snapshot
+     */
+    long[] readSnapshot(LongPredicate live) {
+        ByteBuffer buffer = snapshot.read();
+        if (buffer == null)
+            return NONE;
+        long[] times = readAscending(buffer);
+        long[] ids = new long[times.length];
+        //// the few tweets removed since the snapshot are found once and not for every word
+        boolean[] removed = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = buffer.getLong();
+            removed[i] = !live.test(ids[i]);
+        }
+        while (true) {
+            String word = SnapshotDataBase.readString(buffer);
+            if (word == null)
+                break;
+            long[] places = readAscending(buffer);
+            long[] listTimes = new long[places.length];
+            long[] listIds = new long[places.length];
+            int size = 0;
+            for (long place : places) {
+                if (removed[(int) place])
+                    continue;
+                listTimes[size] = times[(int) place];
+                listIds[size++] = ids[(int) place];
+            }
+            if (size > 0)
+                postings.put(word, new Postings(new Slice(listTimes, listIds, size)));
+        }
+        long[] covered = ids.clone();
+        Arrays.sort(covered);
+        return covered;
+    }
+
+    /**
+     * drop the removed tweets from the lists and write them to the snapshot, a tweet in a list
+     * that is not covered yet is left out and its text is indexed again at start
+     *
+     * @param covered the keys of the tweets that are indexed
+     * @param live    whether a tweet is not removed
+     */
+    void writeSnapshot(Collection<TweetKey> covered, LongPredicate live) {
+        TweetKey[] keys = covered.toArray(new TweetKey[0]);
+        Arrays.sort(keys, Comparator.reverseOrder());
+        Slice all = new Slice(new long[keys.length], new long[keys.length], keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            all.times[i] = time(keys[i].getSendDate());
+            all.ids[i] = keys[i].getId();
+        }
+        snapshot.write(out -> {
+            writeAscending(out, all.times, all.size);
+            for (int i = 0; i < all.size; i++) {
+                out.writeLong(all.ids[i]);
+            }
+            long[] places = new long[16];
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                Slice list = entry.getValue().compact(live);
+                int size = 0;
+                for (int i = 0; i < list.size; i++) {
+                    int place = find(all, all.size, list.times[i], list.ids[i]);
+                    if (place < 0)
+                        continue;
+                    if (size == places.length)
+                        places = Arrays.copyOf(places, size * 2);
+                    places[size++] = place;
+                }
+                if (size == 0)
+                    continue;
+                SnapshotDataBase.writeString(out, entry.getKey());
+                writeAscending(out, places, size);
+            }
+            SnapshotDataBase.writeString(out, null);
+        });
+    }
+
+    //// a count and the differences of the ascending numbers, seven bits in each byte
+    private static void writeAscending(DataOutputStream out, long[] numbers, int size) throws IOException {
+        out.writeInt(size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = numbers[i] - previous;
+            previous = numbers[i];
+            while ((delta & ~0x7FL) != 0) {
+                out.writeByte((int) (delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.writeByte((int) delta);
+        }
+    }
+
+    private static long[] readAscending(ByteBuffer buffer) {
+        long[] numbers = new long[buffer.getInt()];
+        long previous = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += delta;
+            numbers[i] = previous;
+        }
+        return numbers;
+    }
+
+    /**
+     * The type Slice.
+     * the send times and ids below the size never change in the arrays, so a search works on a
+     * slice without a lock while the list grows after it
+     */
+    private static final class Slice {
+        private final long[] times;
+        private final long[] ids;
+        private final int size;
+
+        private Slice(long[] times, long[] ids, int size) {
+            this.times = times;
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The type Postings.
+     * the tweets of a word, they are changed under its lock
+     */
+    private static final class Postings {
+        private volatile Slice current;
+
+        private Postings() {
+            this(new Slice(new long[1], new long[1], 0));
+        }
+
+        private Postings(Slice current) {
+            this.current = current;
+        }
+
+        /**
+         * a new tweet is the newest and is appended, an older one is put in a copy
+         */
+        private synchronized void add(long time, long id) {
+            long[] times = current.times;
+            long[] ids = current.ids;
+            int size = current.size;
+            if (size == 0 || compare(times[size - 1], ids[size - 1], time, id) < 0) {
+                if (size == ids.length) {
+                    times = Arrays.copyOf(times, size + (size >> 1) + 1);
+                    ids = Arrays.copyOf(ids, times.length);
+                }
+                times[size] = time;
+                ids[size] = id;
+                current = new Slice(times, ids, size + 1);
+                return;
+            }
+            int at = find(current, size, time, id);
+            if (at >= 0)
+                return;
+            at = -at - 1;
+            long[] timesCopy = new long[Math.max(ids.length, size + 1)];
+            long[] idsCopy = new long[timesCopy.length];
+            System.arraycopy(times, 0, timesCopy, 0, at);
+            System.arraycopy(ids, 0, idsCopy, 0, at);
+            timesCopy[at] = time;
+            idsCopy[at] = id;
+            System.arraycopy(times, at, timesCopy, at + 1, size - at);
+            System.arraycopy(ids, at, idsCopy, at + 1, size - at);
+            current = new Slice(timesCopy, idsCopy, size + 1);
+        }
+
+        /**
+         * the list without the removed tweets, it is copied only if it has some
+         */
+        private synchronized Slice compact(LongPredicate live) {
+            Slice list = current;
+            long[] times = null;
+            long[] ids = null;
+            int size = 0;
+            for (int i = 0; i < list.size; i++) {
+                long id = list.ids[i];
+                if (live.test(id)) {
+                    if (ids != null) {
+                        times[size] = list.times[i];
+                        ids[size] = id;
+                    }
+                    size++;
+                } else if (ids == null) {
+                    times = Arrays.copyOf(list.times, list.size);
+                    ids = Arrays.copyOf(list.ids, list.size);
+                }
+            }
+            if (ids != null)
+                current = new Slice(times, ids, size);
+            return current;
+        }
+    }
+}
@@ -2,23 +2,41 @@ package  org.ce.ap.server.managers;
 
 import  org.ce.ap.server.exceptions.InvalidUsernameException;
 import  org.ce.ap.server.model.user.User;
+import  org.ce.ap.server.model.user.UserIds;
 import  org.ce.ap.server.services.observer.SubscribersManager;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import  org.ce.ap.server.DataBase.SnapshotDataBase;
 import  org.ce.ap.server.DataBase.UserDataBase;
 
+import  org.ce.ap.server.exceptions.SignUpExceptions;
+
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 
 /**
  * this class holds the server's user information and process on it
  */
 public class UserManager {
-    private static UserManager instance;
+    private static final int SNAPSHOT_VERSION = 1;
+    //// a user file written this close to the snapshot may be newer than what the snapshot has
+    private static final long SNAPSHOT_MARGIN = 2000;
     private static UserDataBase databaseHandler;
-    private static HashMap<String, User> users;
+    private final SnapshotDataBase snapshot = new SnapshotDataBase("users.snapshot", SNAPSHOT_VERSION);
+    private static ConcurrentHashMap<String, User> users;
+    //// the file of a user is written under one of these
+    private final ReentrantLock[] writeLocks = new ReentrantLock[64];
+    private final ThreadLocal<LinkedHashSet<User>> batchedUpdates = new ThreadLocal<>();
     private SubscribersManager subscribersManager;
+    private final UserSearchIndex search = new UserSearchIndex();
 
 
     /**
@@ -26,8 +44,14 @@ public class UserManager {
      */
     private UserManager() {
         databaseHandler = new UserDataBase();
-        users = new HashMap<>();
+        users = new ConcurrentHashMap<>();
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
         getDataFromDatabase();
+        for (User user : users.values()) {
+            search.add(user);
+        }
         subscribersManager = new SubscribersManager(new ArrayList<>(users.values()));
     }
 
@@ -37,37 +61,185 @@ public class UserManager {
      * @return the instance
      */
     public static UserManager getInstance() {
-        if (instance == null) {
-            instance = new UserManager();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * the instance is made once by the class loader when it is first asked for
+     */
+    private static class Holder {
+        private static final UserManager INSTANCE = new UserManager();
     }
 
     /**
      * get data from database
      */
     private void getDataFromDatabase() {
-        ArrayList<JSONObject> userJsonList = databaseHandler.getDirectoryFiles();
-        for (JSONObject user : userJsonList) {
-            String username = user.getString("username");
+        if (!readSnapshot()) {
+            ArrayList<JSONObject> userJsonList = databaseHandler.getDirectoryFiles();
+            for (JSONObject user : userJsonList) {
+                String username = user.getString("username");
+                if (users.containsKey(username))
+                    continue;
+                keep(new User(user));
+            }
+            addFollowing();
+        }
+        System.out.println("users count is :" + users.size());
+    }
+
+    /**
+     * put the user in the users if its username is free and give it its id there, so another
+     * thread never finds a user without an id and a user that is not kept takes none
+     *
+     * @param user the user
+     * @return false if another user has the username
+     */
+    private boolean keep(User user) {
+        return users.computeIfAbsent(user.getUsername(), username -> {
+            UserIds.register(user);
+            return user;
+        }) == user;
+    }
+
+    /**
+     * read the users and their followings from the snapshot, a user whose file changed
+     * after the snapshot is read from the file and a user without a file is left out
+     *
+     * @return false if there is no snapshot to read
+     */
+    private boolean readSnapshot() {
+        ByteBuffer buffer = snapshot.read();
+        if (buffer == null)
+            return false;
+        HashMap<String, Long> fileTimes = databaseHandler.getFileTimes();
+        HashMap<String, ArrayList<String>> followings = new HashMap<>();
+        try {
+            long takenAt = buffer.getLong();
+            String[] usernames = new String[buffer.getInt()];
+            for (int i = 0; i < usernames.length; i++) {
+                User user = new User(SnapshotDataBase.readString(buffer), SnapshotDataBase.readString(buffer),
+                        SnapshotDataBase.readString(buffer), SnapshotDataBase.readString(buffer),
+                        LocalDate.ofEpochDay(buffer.getLong()), LocalDate.ofEpochDay(buffer.getLong()),
+                        SnapshotDataBase.readString(buffer));
+                usernames[i] = user.getUsername();
+                Long modified = fileTimes.get(user.getUsername());
+                if (modified != null && modified < takenAt - SNAPSHOT_MARGIN)
+                    keep(user);
+            }
+            for (String username : usernames) {
+                ArrayList<String> names = new ArrayList<>();
+                for (int count = buffer.getInt(); count > 0; count--) {
+                    names.add(usernames[buffer.getInt()]);
+                }
+                if (users.containsKey(username))
+                    followings.put(username, names);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            users.clear();
+            UserIds.clear();
+            return false;
+        }
+        int changed = 0;
+        for (String username : fileTimes.keySet()) {
             if (users.containsKey(username))
                 continue;
-            User user1 = new User(user);
-            users.put(username, user1);
+            JSONObject json = databaseHandler.readFile(username);
+            User user = new User(json);
+            if (!keep(user))
+                continue;
+            ArrayList<String> names = new ArrayList<>();
+            JSONArray jsonArray = json.getJSONArray("followings");
+            for (int i = 0; i < jsonArray.length(); i++) {
+                names.add(jsonArray.getString(i));
+            }
+            followings.put(user.getUsername(), names);
+            changed++;
         }
-        addFollowing();
-        System.out.println("users count is :" + users.size());
+        addFollows(followings);
+        System.out.println("users read from the snapshot, " + changed + " of them from their files");
+        return true;
+    }
+
+    /**
+     * write the users and their followings to the snapshot
+     */
+    public void writeSnapshot() {
+        long takenAt = System.currentTimeMillis();
+        ArrayList<User> userList = new ArrayList<>(users.values());
+        HashMap<Integer, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < userList.size(); i++) {
+            indexes.put(userList.get(i).getId(), i);
+        }
+        snapshot.write(out -> {
+            out.writeLong(takenAt);
+            out.writeInt(userList.size());
+            for (User user : userList) {
+                SnapshotDataBase.writeString(out, user.getFirstName());
+                SnapshotDataBase.writeString(out, user.getLastName());
+                SnapshotDataBase.writeString(out, user.getUsername());
+                SnapshotDataBase.writeString(out, user.getPassword());
+                out.writeLong(user.getBirthDate().toEpochDay());
+                out.writeLong(user.getRegistryDate().toEpochDay());
+                SnapshotDataBase.writeString(out, user.getBiography());
+            }
+            for (User user : userList) {
+                ArrayList<Integer> followingIndexes = new ArrayList<>();
+                for (int followingId : user.getFollowingIds()) {
+                    Integer index = indexes.get(followingId);
+                    if (index != null)
+                        followingIndexes.add(index);
+                }
+                out.writeInt(followingIndexes.size());
+                for (int index : followingIndexes) {
+                    out.writeInt(index);
+                }
+            }
+        });
     }
 
     private void addFollowing() {
+        HashMap<String, ArrayList<String>> followings = new HashMap<>();
         for (User user : users.values()) {
-            JSONObject jsonObject = user.getJsonObject();
-            JSONArray followings = (JSONArray) jsonObject.get("followings");
-            for (int i = 0; i < followings.length(); i++) {
-                System.out.println(followings.get(i));
-                user.addFollowing(users.get(followings.getString(i)));
+            JSONArray jsonArray = (JSONArray) user.getJsonObject().get("followings");
+            ArrayList<String> names = new ArrayList<>();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                names.add(jsonArray.getString(i));
+            }
+            followings.put(user.getUsername(), names);
+        }
+        addFollows(followings);
+    }
+
+    /**
+     * give the users their followings and followers at start, the ids of each user are
+     * gathered first and added at once instead of one follow at a time
+     *
+     * @param followings the usernames each user follows
+     */
+    private void addFollows(HashMap<String, ArrayList<String>> followings) {
+        HashMap<User, IntStream.Builder> followingIds = new HashMap<>();
+        HashMap<User, IntStream.Builder> followerIds = new HashMap<>();
+        for (Map.Entry<String, ArrayList<String>> entry : followings.entrySet()) {
+            User user = users.get(entry.getKey());
+            if (user == null)
+                continue;
+            for (String username : entry.getValue()) {
+                User following = users.get(username);
+                if (following == null)
+                    continue;
+                followingIds.computeIfAbsent(user, key -> IntStream.builder()).add(following.getId());
+                followerIds.computeIfAbsent(following, key -> IntStream.builder()).add(user.getId());
             }
         }
+        int[] none = new int[0];
+        for (User user : users.values()) {
+            IntStream.Builder followingIdsOfUser = followingIds.get(user);
+            IntStream.Builder followerIdsOfUser = followerIds.get(user);
+            user.addFollows(followingIdsOfUser == null ? none : followingIdsOfUser.build().toArray(),
+                    followerIdsOfUser == null ? none : followerIdsOfUser.build().toArray());
+        }
     }
 
     /**
@@ -138,10 +310,13 @@ public class UserManager {
      * if a new user sign up to twitter
      *
      * @param user the new user
+     * @throws SignUpExceptions if another client took the username after it was checked
      */
-    public void addNewUser(User user) {
-        users.put(user.getUsername(), user);
+    public void addNewUser(User user) throws SignUpExceptions {
+        if (!keep(user))
+            throw new SignUpExceptions(new ArrayList<>(List.of("ExistingUsername")));
         SubscribersManager.addNewUser(user);
+        search.add(user);
         databaseHandler.writeFile(user.getUsername(), user.toJson());
     }
 
@@ -154,13 +329,60 @@ public class UserManager {
         return new ArrayList<>(users.values());
     }
 
+    /**
+     * the users whose username, first name or last name start with the words of a query
+     *
+     * @param query the beginning of the words
+     * @param limit the max number of users
+     * @return the users
+     */
+    public ArrayList<User> searchUsers(String query, int limit) {
+        return search.search(query, limit);
+    }
+
     /**
      * Update.
      *
      * @param user the user
      */
     public void update(User user) {
-        databaseHandler.writeFile(user.getUsername(), user.toJson());
+        LinkedHashSet<User> batch = batchedUpdates.get();
+        if (batch != null) {
+            batch.add(user);
+            return;
+        }
+        write(user);
+    }
+
+    /**
+     * the users this thread updates until endBatch are written once at its end
+     */
+    public void beginBatch() {
+        batchedUpdates.set(new LinkedHashSet<>());
+    }
+
+    /**
+     * write the users the batch updated
+     */
+    public void endBatch() {
+        LinkedHashSet<User> batch = batchedUpdates.get();
+        batchedUpdates.remove();
+        if (batch == null)
+            return;
+        for (User user : batch) {
+            write(user);
+        }
+    }
+
+    private void write(User user) {
+        //// two clients that follow the same user at once must not write its file together
+        ReentrantLock lock = writeLocks[user.getId() & (writeLocks.length - 1)];
+        lock.lock();
+        try {
+            databaseHandler.writeFile(user.getUsername(), user.toJson());
+        } finally {
+            lock.unlock();
+        }
     }
 
 }
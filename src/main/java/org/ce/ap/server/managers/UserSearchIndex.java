@@ -0,0 +1,83 @@
+package  org.ce.ap.server.managers;
+
+import  org.ce.ap.server.model.user.User;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The type User search index.
+ * the words of the users' usernames and names in order, so the users of a prefix are next to each
+ * other and a search walks them from the shortest word up until it has enough
+ */
+class UserSearchIndex {
+    //// it ends the word so a word comes before the longer words that start with it
+    private static final char SEPARATOR = '\0';
+    private final ConcurrentSkipListMap<String, User> entries = new ConcurrentSkipListMap<>();
+
+    private static ArrayList<String> words(User user) {
+        ArrayList<String> words = TweetSearchIndex.words(user.getUsername());
+        for (String word : TweetSearchIndex.words(user.getFirstName() + " " + user.getLastName())) {
+            if (!words.contains(word))
+                words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Add a user.
+     *
+     * @param user the user
+     */
+    void add(User user) {
+        for (String word : words(user)) {
+            entries.put(word + SEPARATOR + user.getUsername(), user);
+        }
+    }
+
+    /**
+     * the users that have a word starting with each word of the query
+     *
+     * @param query the beginning of the words
+     * @param limit the max number of users
+     * @return the users in the order of their words, a user whose word is the query comes first
+     */
+    ArrayList<User> search(String query, int limit) {
+        ArrayList<String> words = TweetSearchIndex.words(query);
+        if (words.isEmpty() || limit <= 0)
+            return new ArrayList<>();
+        //// the longest word has the fewest users to walk, the others are checked on them
+        String prefix = words.get(0);
+        for (String word : words) {
+            if (word.length() > prefix.length())
+                prefix = word;
+        }
+        LinkedHashMap<String, User> found = new LinkedHashMap<>();
+        for (Map.Entry<String, User> entry : entries.tailMap(prefix).entrySet()) {
+            if (found.size() == limit || !entry.getKey().startsWith(prefix))
+                break;
+            User user = entry.getValue();
+            if (!found.containsKey(user.getUsername()) && (words.size() == 1 || hasAll(user, words)))
+                found.put(user.getUsername(), user);
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private static boolean hasAll(User user, ArrayList<String> prefixes) {
+        ArrayList<String> words = words(user);
+        for (String prefix : prefixes) {
+            boolean has = false;
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    has = true;
+                    break;
+                }
+            }
+            if (!has)
+                return false;
+        }
+        return true;
+    }
+}
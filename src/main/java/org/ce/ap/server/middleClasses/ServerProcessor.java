@@ -1,15 +1,16 @@
 package  org.ce.ap.server.middleClasses;
 
 import  org.ce.ap.ServiceWordsEnum;
+import  org.ce.ap.server.ServerConfig;
 import  org.ce.ap.server.exceptions.*;
 import  org.ce.ap.server.managers.TweetManager;
 import  org.ce.ap.server.managers.UserManager;
 import  org.ce.ap.server.services.impl.AuthenticationServiceImpl;
 import  org.ce.ap.server.model.tweet.Retweet;
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.tweet.TweetKey;
 import  org.ce.ap.server.model.user.User;
 import org.json.*;
-import com.google.gson.Gson;
 import  org.ce.ap.server.DataBase.*;
 
 import java.time.LocalDate;
@@ -21,10 +22,17 @@ import java.util.ArrayList;
 public class ServerProcessor {
     private AuthenticationServiceImpl authenticationService = new AuthenticationServiceImpl();
     private TweetManager tweetManager = TweetManager.getInstance();
-    private UserAccount userAccount;
+    //// the requests of a connection may run on several workers at once
+    private volatile UserAccount userAccount;
     private UserManager userManager = UserManager.getInstance();
-    private JSONObject response = new JSONObject();
     private LogDataBase logDataBase = new LogDataBase();
+    private final int pageSize = Integer.parseInt(ServerConfig.getProperty("server.timeline.page-size"));
+    private final int maxPageSize = Integer.parseInt(ServerConfig.getProperty("server.timeline.max-page-size"));
+    private final int userSearchSize = Integer.parseInt(ServerConfig.getProperty("server.users.search-size"));
+    private final int maxBatchSize = Integer.parseInt(ServerConfig.getProperty("server.max-batch-size"));
+    private final boolean compressionEnabled = Boolean.parseBoolean(ServerConfig.getProperty("server.compression.enabled").trim());
+    //// the client asked for compressed responses
+    private volatile boolean compressing;
 
 
     /**
@@ -36,7 +44,7 @@ public class ServerProcessor {
     public JSONArray toJsonArrayTweet(ArrayList<Tweet> list) {
         JSONArray jsonList = new JSONArray();
         for (Tweet tweet : list) {
-            jsonList.put(tweet.toJson());
+            jsonList.put(tweet.toStreamedJson());
         }
         return jsonList;
     }
@@ -50,7 +58,7 @@ public class ServerProcessor {
     public JSONArray toJsonArrayUser(ArrayList<User> list) {
         JSONArray jsonList = new JSONArray();
         for (User user : list) {
-            jsonList.put(user.toJson());
+            jsonList.put(user.toStreamedJson());
         }
         return jsonList;
     }
@@ -69,29 +77,114 @@ public class ServerProcessor {
         return ids;
     }
 
+    /**
+     * the page size the client asked for, it is bounded by the max page size
+     *
+     * @param jsonParameters the json parameters
+     * @return the page size
+     */
+    private int pageSize(JSONObject jsonParameters) {
+        if (jsonParameters == null || !jsonParameters.has("pageSize"))
+            return pageSize;
+        return Math.max(1, Math.min(jsonParameters.getInt("pageSize"), maxPageSize));
+    }
+
+    /**
+     * the last tweet of the previous page
+     *
+     * @param jsonParameters the json parameters
+     * @return the cursor or null for the first page
+     */
+    private TweetKey cursor(JSONObject jsonParameters) {
+        if (jsonParameters == null || !jsonParameters.has("cursor"))
+            return null;
+        return new TweetKey(jsonParameters.getJSONObject("cursor"));
+    }
+
+    /**
+     * the cursor of the next page, a page that is not full is the last one
+     *
+     * @param tweets   the tweets of this page
+     * @param pageSize the page size
+     * @return the cursor json or null if there is no next page
+     */
+    private JSONObject nextCursor(ArrayList<Tweet> tweets, int pageSize) {
+        if (tweets.size() < pageSize)
+            return null;
+        return tweets.get(tweets.size() - 1).getKey().toJson();
+    }
+
     private Tweet findTweet(JSONObject jsonParameters) {
+        return findTweet(jsonParameters, "tweet");
+    }
+
+    private Tweet findTweet(JSONObject jsonParameters, String key) {
         long id;
-        if (((JSONObject) jsonParameters.get("tweet")).keySet().contains("retweetedTweet")) {
-            id = ((JSONObject) ((JSONObject) jsonParameters.get("tweet")).get("newTweet")).getLong("id");
+        if (((JSONObject) jsonParameters.get(key)).keySet().contains("retweetedTweet")) {
+            id = ((JSONObject) ((JSONObject) jsonParameters.get(key)).get("newTweet")).getLong("id");
         } else
-            id = ((JSONObject) jsonParameters.get("tweet")).getLong("id");
+            id = ((JSONObject) jsonParameters.get(key)).getLong("id");
 
         return tweetManager.findTweet(id);
     }
 
+    /**
+     * whether a request may run while other requests of its connection run, only a request
+     * with a requestId may because its answer can come out of order, and signing in never may
+     *
+     * @param request the request
+     * @return true if it may run with the others
+     */
+    public static boolean isConcurrent(JSONObject request) {
+        if (!request.has("requestId"))
+            return false;
+        return !signsIn(request);
+    }
+
+    private static boolean signsIn(JSONObject request) {
+        String method = request.optString("method");
+        if (method.equals("SIGNIN") || method.equals("SIGNUP"))
+            return true;
+        JSONObject parameters = request.optJSONObject("parameterValues");
+        JSONArray requests = parameters == null ? null : parameters.optJSONArray("requests");
+        if (!method.equals("BATCH") || requests == null)
+            return false;
+        for (int i = 0; i < requests.length(); i++) {
+            JSONObject subRequest = requests.optJSONObject(i);
+            if (subRequest != null && signsIn(subRequest))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Process request json object.
+     * the requestId of the request is copied to the response so a client that has
+     * many requests in flight knows which one is answered
      *
      * @param jsonObject the json object
      * @return the json object
      */
     public JSONObject processRequest(JSONObject jsonObject) {
+        //// the log lines of the request go to the log together
+        logDataBase.beginRequest();
+        try {
+            JSONObject response = process(jsonObject);
+            if (response != null)
+                response.putOpt("requestId", jsonObject.opt("requestId"));
+            return response;
+        } finally {
+            logDataBase.endRequest();
+        }
+    }
 
-        this.response = new JSONObject();
+    private JSONObject process(JSONObject jsonObject) {
+        JSONObject response = new JSONObject();
         JSONObject jsonParameters = (JSONObject) jsonObject.get("parameterValues");
         System.out.println();
-        Gson gson = new Gson();
-        ServiceWordsEnum method = gson.fromJson(jsonObject.getString("method"), ServiceWordsEnum.class);
+        Object name = jsonObject.get("method");
+        //// the binary form gives the method itself, the json form gives its name
+        ServiceWordsEnum method = name instanceof ServiceWordsEnum ? (ServiceWordsEnum) name : ServiceWordsEnum.valueOf(name.toString());
         System.out.println(method);
         String username = "";
         if (userAccount != null) {
@@ -106,14 +199,22 @@ public class ServerProcessor {
 
                 return signUp(jsonParameters);
 
+            case BATCH:
+                return batch(jsonParameters, username);
+
+            case COMPRESS:
+                return compress(username);
+
             case TIMELINE:
                 logDataBase.writeLogFile(false, username, "Attempt TIMELINE");
                 try {
-                    ArrayList<Tweet> tweets = userAccount.getTweets();
+                    int pageSize = pageSize(jsonParameters);
+                    ArrayList<Tweet> tweets = userAccount.getTweets(cursor(jsonParameters), pageSize);
                     response.put("hasError", false);
                     logDataBase.writeLogFile(false, username, "Successful TIMELINE");
                     response.put("count", tweets.size());
                     response.put("result", toJsonArrayTweet(tweets));
+                    response.putOpt("nextCursor", nextCursor(tweets, pageSize));
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "TIMELINE Failed");
                     System.out.println(e);
@@ -123,11 +224,13 @@ public class ServerProcessor {
             case SHOW_MY_TWEETS:
                 logDataBase.writeLogFile(false, username, "Attempt SHOW USER TWEETS");
                 try {
-                    ArrayList<Tweet> tweets = tweetManager.findTweetsByAuthor(userAccount.getUser());
+                    int pageSize = pageSize(jsonParameters);
+                    ArrayList<Tweet> tweets = tweetManager.findTweetsByAuthor(userAccount.getUser(), cursor(jsonParameters), pageSize);
                     response.put("hasError", false);
                     logDataBase.writeLogFile(false, username, "Successful SHOW_USER_TWEETS");
                     response.put("count", tweets.size());
                     response.put("result", toJsonArrayTweet(tweets));
+                    response.putOpt("nextCursor", nextCursor(tweets, pageSize));
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "Failed SHOW_USER_TWEETS");
                     System.out.println(e);
@@ -142,7 +245,7 @@ public class ServerProcessor {
                     logDataBase.writeLogFile(false, username, "Successful TWEET");
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(tweet.toJson());
+                    jsonArray.put(tweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (InvalidCharacterNumberException e) {
                     response.put("hasError", true);
@@ -195,7 +298,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(retweet.toJson());
+                    jsonArray.put(retweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (InvalidCharacterNumberException e) {
                     logDataBase.writeLogFile(true, username, "Invalid Character Number");
@@ -212,9 +315,14 @@ public class ServerProcessor {
             case REMOVERETWEET:
                 logDataBase.writeLogFile(false, username, "Attempt REMOVE RETWEET");
                 try {
-                    Tweet tweet = gson.fromJson(jsonParameters.getString("tweet"), Tweet.class);
-                    Retweet retweet = gson.fromJson(jsonParameters.getString("retweet"), Retweet.class);
-                    userAccount.removeRetweet(tweet, retweet);
+                    Tweet tweet = findTweet(jsonParameters);
+                    Tweet retweet = findTweet(jsonParameters, "retweet");
+                    //// only the author of the retweet removes it, and only from the tweet it retweeted
+                    if (tweet == null || !(retweet instanceof Retweet)
+                            || ((Retweet) retweet).getRetweetedTweet().getId() != tweet.getId()
+                            || !userAccount.getUser().equals(retweet.getAuthor()))
+                        throw new IllegalArgumentException("no such retweet of the user");
+                    userAccount.removeRetweet(tweet, (Retweet) retweet);
                     logDataBase.writeLogFile(false, username, "Successful REMOVE RETWEET");
                     response.put("hasError", false);
                     response.put("count", 0);
@@ -235,7 +343,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(tweet.toJson());
+                    jsonArray.put(tweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "Failed LIKE");
@@ -254,7 +362,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(tweet.toJson());
+                    jsonArray.put(tweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "Failed DISLIKE");
@@ -272,7 +380,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(tweet.toJson());
+                    jsonArray.put(tweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "Failed REPLY");
@@ -291,7 +399,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(tweet.toJson());
+                    jsonArray.put(tweet.toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (Exception e) {
                     logDataBase.writeLogFile(true, username, "Failed REMOVE REPLY");
@@ -309,7 +417,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(userAccount.getUser().toJson());
+                    jsonArray.put(userAccount.getUser().toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (InvalidUsernameException e) {
                     logDataBase.writeLogFile(true, username, "Invalid Username");
@@ -326,7 +434,7 @@ public class ServerProcessor {
                     response.put("hasError", false);
                     response.put("count", 1);
                     JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(userAccount.getUser().toJson());
+                    jsonArray.put(userAccount.getUser().toStreamedJson());
                     response.put("result", jsonArray);
                 } catch (InvalidUsernameException e) {
                     logDataBase.writeLogFile(true, username, "Invalid Username");
@@ -349,6 +457,25 @@ public class ServerProcessor {
                 } finally {
                     return response;
                 }
+            case SEARCH_USERS:
+                logDataBase.writeLogFile(false, username, "Attempt SEARCH USERS");
+                try {
+                    int limit = jsonParameters.has("pageSize") ? pageSize(jsonParameters) : userSearchSize;
+                    ArrayList<User> users = userManager.searchUsers(jsonParameters.getString("query"), limit);
+                    JSONArray jsonArray = new JSONArray();
+                    for (User user : users) {
+                        jsonArray.put(user.toSummaryJson());
+                    }
+                    logDataBase.writeLogFile(false, username, "Successful SEARCH USERS");
+                    response.put("hasError", false);
+                    response.put("count", users.size());
+                    response.put("result", jsonArray);
+                } catch (RuntimeException e) {
+                    logDataBase.writeLogFile(true, username, "Failed SEARCH USERS");
+                    response.put("hasError", true);
+                    response.put("errorCode", "InvalidRequestException");
+                }
+                return response;
             case SHOW_FOLLOWINGS:
                 logDataBase.writeLogFile(false, username, "Attempt SHOW FOLLOWINGS");
                 try {
@@ -367,10 +494,14 @@ public class ServerProcessor {
                 try {
                     User user = userManager.findUser(jsonParameters.getString("username"));
                     JSONObject userInfo = new JSONObject();
-                    ArrayList<Tweet> tweets = tweetManager.findTweetsByAuthor(user);
+                    int pageSize = pageSize(jsonParameters);
+                    ArrayList<Tweet> tweets = tweetManager.findTweetsByAuthor(user, cursor(jsonParameters), pageSize);
                     JSONArray tweetArray = toJsonArrayTweet(tweets);
-                    userInfo.put("user",user.toJson());
+                    userInfo.put("user",user.toStreamedJson());
                     userInfo.put("tweets",tweetArray);
+                    JSONObject nextCursor = nextCursor(tweets, pageSize);
+                    userInfo.putOpt("nextCursor", nextCursor);
+                    response.putOpt("nextCursor", nextCursor);
                     JSONArray jsonArray= new JSONArray();
                     jsonArray.put(userInfo);
                     response.put("hasError", false);
@@ -384,11 +515,105 @@ public class ServerProcessor {
                 finally {
                     return response;
                 }
+            case SEARCH_TWEETS:
+                logDataBase.writeLogFile(false, username, "Attempt SEARCH TWEETS");
+                try {
+                    int pageSize = pageSize(jsonParameters);
+                    ArrayList<Tweet> tweets = tweetManager.searchTweets(jsonParameters.getString("query"), cursor(jsonParameters), pageSize);
+                    response.put("hasError", false);
+                    logDataBase.writeLogFile(false, username, "Successful SEARCH TWEETS");
+                    response.put("count", tweets.size());
+                    response.put("result", toJsonArrayTweet(tweets));
+                    response.putOpt("nextCursor", nextCursor(tweets, pageSize));
+                } catch (RuntimeException e) {
+                    //// no query or a cursor that is not one
+                    logDataBase.writeLogFile(true, username, "Failed SEARCH TWEETS");
+                    response.put("hasError", true);
+                    response.put("errorCode", "InvalidRequestException");
+                }
+                return response;
         }
         return null;
     }
 
+    /**
+     * the client is gone, its timeline does not need the new tweets anymore
+     */
+    public void close() {
+        if (userAccount != null)
+            userAccount.close();
+        userAccount = null;
+    }
+
+    /**
+     * Is compressing boolean.
+     *
+     * @return whether the large responses of the connection are compressed
+     */
+    public boolean isCompressing() {
+        return compressing;
+    }
+
+    //// the result tells the client whether the server compresses, an old client never asks
+    private JSONObject compress(String username) {
+        JSONObject response = new JSONObject();
+        compressing = compressionEnabled;
+        logDataBase.writeLogFile(false, username, "COMPRESS " + compressing);
+        response.put("hasError", false);
+        response.put("count", 1);
+        response.put("result", new JSONArray().put(compressing));
+        return response;
+    }
+
+    /**
+     * run the requests of a batch in order, the tweets and the users they change are written once at the end
+     */
+    private JSONObject batch(JSONObject jsonParameters, String username) {
+        JSONObject response = new JSONObject();
+        JSONArray requests = jsonParameters.optJSONArray("requests");
+        if (requests == null || requests.length() > maxBatchSize) {
+            logDataBase.writeLogFile(true, username, "BATCH Failed");
+            response.put("hasError", true);
+            response.put("errorCode", "InvalidBatchException");
+            return response;
+        }
+        logDataBase.writeLogFile(false, username, "Attempt BATCH of " + requests.length());
+        JSONArray results = new JSONArray();
+        tweetManager.beginBatch();
+        userManager.beginBatch();
+        try {
+            for (int i = 0; i < requests.length(); i++) {
+                results.put(batchItem(requests.optJSONObject(i)));
+            }
+        } finally {
+            userManager.endBatch();
+            tweetManager.endBatch();
+        }
+        response.put("hasError", false);
+        response.put("count", results.length());
+        response.put("result", results);
+        return response;
+    }
+
+    private JSONObject batchItem(JSONObject request) {
+        //// a batch in a batch is refused
+        if (request != null && !"BATCH".equals(request.optString("method"))) {
+            try {
+                JSONObject response = process(request);
+                if (response != null)
+                    return response;
+            } catch (RuntimeException e) {
+                System.out.println(e);
+            }
+        }
+        JSONObject response = new JSONObject();
+        response.put("hasError", true);
+        response.put("errorCode", "InvalidRequestException");
+        return response;
+    }
+
     private JSONObject signUp(JSONObject jsonParameters) {
+        JSONObject response = new JSONObject();
         String username = jsonParameters.getString("username");
         logDataBase.writeLogFile(false, username, "Attempt SIGN_UP");
         try {
@@ -396,12 +621,13 @@ public class ServerProcessor {
                     , jsonParameters.getString("lastName"), jsonParameters.getString("username"),
                     jsonParameters.getString("password"),
                     LocalDate.parse(jsonParameters.getString("birthDate")));
+            close();
             userAccount = new UserAccount(user);
             response.put("hasError", false);
             logDataBase.writeLogFile(false, username, "Successful SIGN_UP");
             response.put("count", 1);
             JSONArray jsonArray = new JSONArray();
-            jsonArray.put(user.toJson());
+            jsonArray.put(user.toStreamedJson());
             response.put("result", jsonArray);
         } catch (SignUpExceptions e) {
             for (String s : e.getMessages()) {
@@ -419,17 +645,19 @@ public class ServerProcessor {
     }
 
     private JSONObject signIn(JSONObject jsonParameters) {
+        JSONObject response = new JSONObject();
         String username = jsonParameters.getString("username");
         logDataBase.writeLogFile(false, username, "Attempt LOG_IN");
         try {
             User user = authenticationService.signIn(jsonParameters.getString("username"),
                     jsonParameters.getString("password"));
+            close();
             userAccount = new UserAccount(user);
             response.put("hasError", false);
             logDataBase.writeLogFile(false, username, "Successful LOG_IN");
             response.put("count", 1);
             JSONArray jsonArray = new JSONArray();
-            jsonArray.put(user.toJson());
+            jsonArray.put(user.toStreamedJson());
             response.put("result", jsonArray);
         } catch (InvalidUsernameException e) {
             System.out.println(e.getLocalizedMessage());
@@ -462,8 +690,8 @@ public class ServerProcessor {
      */
     public JSONObject toJsonObject() {
         JSONObject jsonObject = new JSONObject();
-        jsonObject.put("user", userAccount.getUser().toJson());
-        jsonObject.put("tweets", toJsonArrayTweet(userAccount.getTweets()));
+        jsonObject.put("user", userAccount.getUser().toStreamedJson());
+        jsonObject.put("tweets", toJsonArrayTweet(userAccount.getTweets(null, pageSize)));
         jsonObject.put("followers", getIds(userAccount.getUser().getFollowers()));
         jsonObject.put("followings", getIds(userAccount.getUser().getFollowings()));
         return jsonObject;
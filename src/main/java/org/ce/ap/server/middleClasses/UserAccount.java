@@ -11,6 +11,7 @@ import java.util.ArrayList;
 
 import  org.ce.ap.server.model.tweet.Retweet;
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.tweet.TweetKey;
 import  org.ce.ap.server.model.user.User;
 
 /**
@@ -37,18 +38,11 @@ public class UserAccount {
     public UserAccount(User user) throws InvalidUsernameException {
         this.user = user;
         this.timelineService= new TimelineServiceImpl(user);
+        //// the timeline is filled when it is first read, until then it only collects the subscriptions
+        observerService.attach(timelineService, user);
         observerService.subscribe(user, timelineService, this.user);
         tweetingService = new TweetingServiceImpl(user);
         tweetManager = TweetManager.getInstance();
-        getTweetsFromDataBase(user);
-        ArrayList<User> users = user.getFollowings();
-        for (int i = 0; i < users.size(); i++) {
-            observerService.subscribe(users.get(i), timelineService, this.user);
-        }
-    }
-
-    private void getTweetsFromDataBase(User user) throws InvalidUsernameException {
-        timelineService.addTweetsFromFile(TweetManager.getInstance().getDataFromDatabase(user));
     }
 
     /**
@@ -59,7 +53,6 @@ public class UserAccount {
      */
     public void addFollowing(User user) throws InvalidUsernameException {
         observerService.subscribe(user, timelineService, this.user);
-        getTweetsFromDataBase(user);
     }
 
     /**
@@ -71,6 +64,13 @@ public class UserAccount {
         observerService.unSubscribe(user, timelineService, this.user);
     }
 
+    /**
+     * stop receiving the new tweets when the user goes offline, the follows are kept
+     */
+    public void close() {
+        observerService.detach(timelineService, user);
+    }
+
     /**
      * add a new tweet for this userAccount
      *
@@ -162,12 +162,14 @@ public class UserAccount {
     }
 
     /**
-     * get the timeline's tweet
+     * get a page of the timeline
      *
+     * @param after the last tweet of the previous page or null for the newest tweets
+     * @param limit the max number of tweets
      * @return the tweet's list
      */
-    public ArrayList<Tweet> getTweets() {
-        return timelineService.refresh();
+    public ArrayList<Tweet> getTweets(TweetKey after, int limit) {
+        return timelineService.refresh(after, limit);
     }
 
     /**
@@ -2,14 +2,19 @@ package  org.ce.ap.server.model.tweet;
 
 import  org.ce.ap.server.exceptions.InvalidCharacterNumberException;
 import  org.ce.ap.server.model.user.User;
+import org.ce.ap.protocol.JsonOutput;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.time.LocalDateTime;
 
 /**
  * The type Retweet.
  */
 public class Retweet extends Tweet {
+    //// the order toJson's keys are written in
+    private static final String[] JSON_KEYS = JsonOutput.keyOrder("retweetedTweet", "newTweet");
     private Tweet retweetedTweet;
 
     /**
@@ -76,4 +81,22 @@ public class Retweet extends Tweet {
         jsonObject.put("newTweet", super.toJson());
         return jsonObject;
     }
+
+    @Override
+    protected void writeFields(Writer out) throws IOException {
+        out.write('{');
+        for (int i = 0; i < JSON_KEYS.length; i++) {
+            JsonOutput.writeKey(out, i > 0, JSON_KEYS[i]);
+            if (JSON_KEYS[i].equals("retweetedTweet"))
+                retweetedTweet.writeJson(out);
+            else
+                super.writeFields(out);
+        }
+        out.write('}');
+    }
+
+    @Override
+    protected long stamp() {
+        return Math.max(super.stamp(), retweetedTweet.stamp());
+    }
 }
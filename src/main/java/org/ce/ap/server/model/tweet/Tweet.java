@@ -1,11 +1,24 @@
 package  org.ce.ap.server.model.tweet;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import  org.ce.ap.server.ServerConfig;
 import  org.ce.ap.server.exceptions.InvalidCharacterNumberException;
 import  org.ce.ap.server.model.user.User;
+import org.ce.ap.protocol.BinaryOutput;
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.protocol.StreamedJson;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -13,14 +26,25 @@ import org.json.JSONObject;
  * The type Tweet.
  */
 public class Tweet {
+    //// the order toJson's keys are written in
+    private static final String[] JSON_KEYS = JsonOutput.keyOrder("id", "author", "text", "likes", "replies", "sendDate", "retweets");
+    private static final boolean CACHE_JSON = Boolean.parseBoolean(ServerConfig.getProperty("server.tweets.json-cache").trim());
+    //// every change takes the next number so a stamp never comes back to an older value
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
     private final long id;
     private final User author;
     private JSONObject jsonObject;
     private String text;
-    private HashSet<User> likes = new HashSet<>();
-    private ArrayList<Tweet> replies = new ArrayList<>();
-    private HashSet<JSONObject> retweets = new HashSet<>();
+    //// the collections are read by the serializers while other clients change them
+    private Set<User> likes = ConcurrentHashMap.newKeySet();
+    private List<Tweet> replies = new CopyOnWriteArrayList<>();
+    private Set<JSONObject> retweets = ConcurrentHashMap.newKeySet();
     private final LocalDateTime sendDate;
+    private final TweetKey key;
+    private volatile long version = VERSIONS.incrementAndGet();
+    private volatile CachedJson cachedJson;
 
     /**
      * create a new object from tweet
@@ -35,7 +59,8 @@ public class Tweet {
         this.author = author;
         this.text = text;
         this.id = id;
-        this.sendDate = LocalDateTime.now();
+        this.sendDate = TweetIds.sendDate(id);
+        this.key = new TweetKey(sendDate, id);
     }
 
     /**
@@ -50,6 +75,7 @@ public class Tweet {
         this.text = jsonObject.getString("text");
         this.sendDate = LocalDateTime.parse(jsonObject.getString("sendDate"));
         this.id = jsonObject.getLong("id");
+        this.key = new TweetKey(sendDate, id);
         JSONArray jsonArray = (JSONArray) jsonObject.get("retweets");
         for (int i = 0; i < jsonArray.length(); i++) {
             retweets.add((JSONObject) jsonArray.get(i));
@@ -62,7 +88,10 @@ public class Tweet {
      * @param likes the likes
      */
     public void setLikes(HashSet<User> likes) {
-        this.likes = likes;
+        Set<User> newLikes = ConcurrentHashMap.newKeySet();
+        newLikes.addAll(likes);
+        this.likes = newLikes;
+        changed();
     }
 
     /**
@@ -71,7 +100,8 @@ public class Tweet {
      * @param replies the replies
      */
     public void setReplies(ArrayList<Tweet> replies) {
-        this.replies = replies;
+        this.replies = new CopyOnWriteArrayList<>(replies);
+        changed();
     }
 
 
@@ -82,6 +112,7 @@ public class Tweet {
      */
     public void likeTweet(User liker) {
         likes.add(liker);
+        changed();
     }
 
     /**
@@ -94,6 +125,7 @@ public class Tweet {
             System.err.println("liker not found");
         }
         likes.remove(liker);
+        changed();
 
     }
 
@@ -104,6 +136,7 @@ public class Tweet {
      */
     public void addNewReply(Tweet tweet) {
         replies.add(tweet);
+        changed();
     }
 
     /**
@@ -112,10 +145,11 @@ public class Tweet {
      * @param tweet the tweet's reply
      */
     public void removeReply(Tweet tweet) {
-        if (!likes.contains(tweet)) {
+        if (!replies.contains(tweet)) {
             System.err.println("reply not found");
         }
         replies.remove(tweet);
+        changed();
     }
 
     /**
@@ -134,6 +168,7 @@ public class Tweet {
      */
     public void editText(String text) {
         this.text = text;
+        changed();
     }
 
     /**
@@ -141,7 +176,7 @@ public class Tweet {
      *
      * @return likes field
      */
-    public HashSet<User> getLikes() {
+    public Set<User> getLikes() {
         return likes;
     }
 
@@ -150,7 +185,7 @@ public class Tweet {
      *
      * @return replies field
      */
-    public ArrayList<Tweet> getReplies() {
+    public List<Tweet> getReplies() {
         return replies;
     }
 
@@ -163,6 +198,15 @@ public class Tweet {
         return sendDate;
     }
 
+    /**
+     * Gets key.
+     *
+     * @return the position of the tweet in the timelines
+     */
+    public TweetKey getKey() {
+        return key;
+    }
+
     /**
      * Gets author.
      *
@@ -197,6 +241,7 @@ public class Tweet {
         retweetJson.put("id", retweet.getId());
         if (!retweets.contains(retweetJson))
             retweets.add(retweetJson);
+        changed();
     }
 
     /**
@@ -230,13 +275,8 @@ public class Tweet {
 //        System.out.println("after");
 //        System.out.println(retweets);
         long id = retweet.getId();
-        for (JSONObject r : retweets)
-        {
-            if(r.getLong("id") == id)
-            {
-                retweets.remove(r);
-            }
-        }
+        retweets.removeIf(r -> r.getLong("id") == id);
+        changed();
     }
 
     @Override
@@ -265,7 +305,7 @@ public class Tweet {
      * @param likes the likes
      * @return the hash set
      */
-    public HashSet<String> toHashSetLikes(HashSet<User> likes) {
+    public HashSet<String> toHashSetLikes(Set<User> likes) {
         HashSet<String> jsonHashSet = new HashSet<>();
         for (User user : likes) {
             jsonHashSet.add(user.getUsername());
@@ -279,7 +319,7 @@ public class Tweet {
      * @param list the list
      * @return the array list
      */
-    public ArrayList<JSONObject> toJsonArrayTweet(ArrayList<Tweet> list) {
+    public ArrayList<JSONObject> toJsonArrayTweet(List<Tweet> list) {
         ArrayList<JSONObject> jsonList = new ArrayList<>();
         for (Tweet tweet : list) {
             jsonList.add((tweet).toJson());
@@ -294,7 +334,7 @@ public class Tweet {
      * @param list the list
      * @return the array list
      */
-    public JSONArray toJsonArrayRetweet(HashSet<JSONObject> list) {
+    public JSONArray toJsonArrayRetweet(Set<JSONObject> list) {
         JSONArray jsonList = new JSONArray();
         for (JSONObject retweet : list) {
             jsonList.put(retweet);
@@ -331,7 +371,7 @@ public class Tweet {
      * @return the json object
      */
     public JSONObject toJson() {
-        this.jsonObject = new JSONObject();
+        JSONObject jsonObject = new JSONObject();
         jsonObject.put("id", id);
         jsonObject.put("author", author.getUsername());
         jsonObject.put("text", text);
@@ -339,8 +379,184 @@ public class Tweet {
         jsonObject.put("replies", toJsonArrayTweet(replies));
         jsonObject.put("sendDate", sendDate);
         jsonObject.put("retweets", toJsonArrayRetweet(retweets));
+        this.jsonObject = jsonObject;
         return jsonObject;
     }
 
+    /**
+     * the tweet as a value that is written straight to the response
+     *
+     * @return the streamed json
+     */
+    public StreamedJson toStreamedJson() {
+        return new StreamedJson() {
+            @Override
+            public void writeJson(Writer out) throws IOException {
+                Tweet.this.writeJson(out);
+            }
+
+            @Override
+            public void writeBinary(BinaryOutput out) throws IOException {
+                Tweet.this.writeBinary(out);
+            }
+        };
+    }
+
+    /**
+     * write the same text as toJson().toString() without building the json objects,
+     * in a response buffer the bytes of the last write are reused until the tweet changes
+     *
+     * @param out the writer
+     * @throws IOException the io exception
+     */
+    public final void writeJson(Writer out) throws IOException {
+        if (!CACHE_JSON || !(out instanceof JsonOutput)) {
+            writeFields(out);
+            return;
+        }
+        JsonOutput output = (JsonOutput) out;
+        //// the stamp is taken first, a change during the write leaves a cache that is already stale
+        long stamp = stamp();
+        CachedJson cached = cachedJson;
+        if (cached != null && cached.stamp == stamp) {
+            CACHE_HITS.increment();
+            output.writeBytes(cached.bytes, 0, cached.bytes.length);
+            return;
+        }
+        CACHE_MISSES.increment();
+        int start = output.size();
+        writeFields(output);
+        cachedJson = new CachedJson(stamp, Arrays.copyOfRange(output.array(), start, output.size()), null);
+    }
+
+    /**
+     * write the binary form of the tweet, it is made from the json text once and kept beside it
+     *
+     * @param out the binary output
+     * @throws IOException the io exception
+     */
+    public final void writeBinary(BinaryOutput out) throws IOException {
+        if (!CACHE_JSON) {
+            out.transcode(this::writeJson);
+            return;
+        }
+        long stamp = stamp();
+        CachedJson cached = cachedJson;
+        if (cached != null && cached.stamp == stamp && cached.binary != null) {
+            CACHE_HITS.increment();
+            out.writeBytes(cached.binary, 0, cached.binary.length);
+            return;
+        }
+        int start = out.size();
+        out.transcode(this::writeJson);
+        //// the json was cached by the transcode, unless the tweet changed meanwhile
+        cached = cachedJson;
+        if (cached != null && cached.stamp == stamp)
+            cachedJson = new CachedJson(stamp, cached.bytes, Arrays.copyOfRange(out.array(), start, out.size()));
+    }
 
+    /**
+     * write the json text of the tweet
+     *
+     * @param out the writer
+     * @throws IOException the io exception
+     */
+    protected void writeFields(Writer out) throws IOException {
+        out.write('{');
+        for (int i = 0; i < JSON_KEYS.length; i++) {
+            JsonOutput.writeKey(out, i > 0, JSON_KEYS[i]);
+            switch (JSON_KEYS[i]) {
+                case "id":
+                    out.write(Long.toString(id));
+                    break;
+                case "author":
+                    JSONObject.quote(author.getUsername(), out);
+                    break;
+                case "text":
+                    JSONObject.quote(text, out);
+                    break;
+                case "likes":
+                    out.write('[');
+                    boolean comma = false;
+                    for (String liker : toHashSetLikes(likes)) {
+                        if (comma)
+                            out.write(',');
+                        JSONObject.quote(liker, out);
+                        comma = true;
+                    }
+                    out.write(']');
+                    break;
+                case "replies":
+                    out.write('[');
+                    boolean replyComma = false;
+                    for (Tweet reply : replies) {
+                        if (replyComma)
+                            out.write(',');
+                        reply.writeJson(out);
+                        replyComma = true;
+                    }
+                    out.write(']');
+                    break;
+                case "sendDate":
+                    JSONObject.quote(sendDate.toString(), out);
+                    break;
+                case "retweets":
+                    JsonOutput.writeValue(out, retweets);
+                    break;
+            }
+        }
+        out.write('}');
+    }
+
+    /**
+     * the newest change of the tweet and of everything its json contains
+     *
+     * @return the stamp
+     */
+    protected long stamp() {
+        long stamp = version;
+        for (Tweet reply : replies) {
+            stamp = Math.max(stamp, reply.stamp());
+        }
+        return stamp;
+    }
+
+    private void changed() {
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Gets cache hits.
+     *
+     * @return the number of tweets written from their cached bytes
+     */
+    public static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    /**
+     * Gets cache misses.
+     *
+     * @return the number of tweets that were serialized again
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    /**
+     * The type Cached json.
+     * the utf-8 text of a tweet and the stamp it was written at
+     */
+    private static class CachedJson {
+        private final long stamp;
+        private final byte[] bytes;
+        //// the binary form, made the first time a binary client asks for the tweet
+        private final byte[] binary;
+
+        private CachedJson(long stamp, byte[] bytes, byte[] binary) {
+            this.stamp = stamp;
+            this.bytes = bytes;
+            this.binary = binary;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package  org.ce.ap.server.model.tweet;
+
+import  org.ce.ap.server.ServerConfig;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Tweet ids.
+ * the id of a new tweet is the milliseconds since EPOCH, the server.node-id and a sequence,
+ * so the ids grow with time and two servers with different node ids never make the same one.
+ * a new tweet is sent at the time in its id, so ordering by id is ordering by send date
+ */
+public final class TweetIds {
+    //// 2020-01-01T00:00:00Z, 41 bits of milliseconds after it last until 2089
+    private static final long EPOCH = 1577836800000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long NODE = node();
+    //// the milliseconds and the sequence of the last id, when the sequence is used up
+    //// the ids go on in the next millisecond and a clock that goes back is not followed
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private TweetIds() {
+    }
+
+    /**
+     * Next long.
+     *
+     * @return a new id
+     */
+    public static long next() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long next = LAST.updateAndGet(last -> Math.max(now, last + 1));
+        return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | NODE << SEQUENCE_BITS | next & ((1L << SEQUENCE_BITS) - 1);
+    }
+
+    /**
+     * the ids made after a start come after the ids of this node that are already kept,
+     * even if the clock went back a little while the server was stopped
+     *
+     * @param id an id that is kept
+     */
+    public static void observe(long id) {
+        long millis = id >>> (NODE_BITS + SEQUENCE_BITS);
+        //// the ids before these generated ones were random, one that looks like a later id is not followed
+        if ((id >>> SEQUENCE_BITS & ((1L << NODE_BITS) - 1)) != NODE || millis > System.currentTimeMillis() - EPOCH)
+            return;
+        long state = millis << SEQUENCE_BITS | id & ((1L << SEQUENCE_BITS) - 1);
+        LAST.accumulateAndGet(state, Math::max);
+    }
+
+    /**
+     * the time in an id
+     *
+     * @param id the id
+     * @return the send date of the tweet of the id
+     */
+    public static LocalDateTime sendDate(long id) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(EPOCH + (id >>> (NODE_BITS + SEQUENCE_BITS))), ZoneId.systemDefault());
+    }
+
+    private static long node() {
+        long node = Long.parseLong(ServerConfig.getProperty("server.node-id").trim());
+        if (node < 0 || node >= 1L << NODE_BITS)
+            throw new IllegalStateException("server.node-id should be from 0 to " + ((1L << NODE_BITS) - 1));
+        return node;
+    }
+}
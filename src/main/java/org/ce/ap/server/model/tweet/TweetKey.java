@@ -0,0 +1,94 @@
+package  org.ce.ap.server.model.tweet;
+
+import org.json.JSONObject;
+
+import java.time.LocalDateTime;
+
+/**
+ * The type Tweet key.
+ * the position of a tweet in a timeline, newer tweets come first and the id breaks the ties
+ */
+public class TweetKey implements Comparable<TweetKey> {
+    private final LocalDateTime sendDate;
+    private final long id;
+
+    /**
+     * Instantiates a new Tweet key.
+     *
+     * @param sendDate the send date
+     * @param id       the id
+     */
+    public TweetKey(LocalDateTime sendDate, long id) {
+        this.sendDate = sendDate;
+        this.id = id;
+    }
+
+    /**
+     * Instantiates a new Tweet key from a cursor json.
+     * the id alone is enough for the tweets sent at the time in their id
+     *
+     * @param jsonObject the json object with the id and maybe the sendDate
+     */
+    public TweetKey(JSONObject jsonObject) {
+        this(jsonObject.has("sendDate") ? LocalDateTime.parse(jsonObject.getString("sendDate"))
+                : TweetIds.sendDate(jsonObject.getLong("id")), jsonObject.getLong("id"));
+    }
+
+    /**
+     * To json json object.
+     *
+     * @return the cursor json
+     */
+    public JSONObject toJson() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("sendDate", sendDate.toString());
+        jsonObject.put("id", id);
+        return jsonObject;
+    }
+
+    /**
+     * Gets send date.
+     *
+     * @return the send date
+     */
+    public LocalDateTime getSendDate() {
+        return sendDate;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(TweetKey o) {
+        int compare = o.sendDate.compareTo(sendDate);
+        if (compare != 0)
+            return compare;
+        return Long.compare(o.id, id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof TweetKey))
+            return false;
+        TweetKey tweetKey = (TweetKey) o;
+        return id == tweetKey.id && sendDate.equals(tweetKey.sendDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return sendDate + "#" + id;
+    }
+}
@@ -0,0 +1,184 @@
+package  org.ce.ap.server.model.user;
+
+import java.util.Arrays;
+
+/**
+ * The type Follow set.
+ * the ids of the users on one side of a user's follows, sorted and cut into chunks. a change
+ * copies one chunk and the list of chunks, never the whole set, and makes a new state so a
+ * reader works on the one it got without a lock. the ids in one array are made once for a
+ * state, when they are first read
+ */
+public final class FollowSet {
+    //// a chunk is split when it has twice as many ids
+    private static final int CHUNK_SIZE = 512;
+    private static final State EMPTY = new State(new int[0][], 0);
+    private volatile State state = EMPTY;
+
+    /**
+     * Add boolean.
+     *
+     * @param id the id of the user
+     * @return false if it was in the set
+     */
+    public synchronized boolean add(int id) {
+        State current = state;
+        if (current.size == 0) {
+            state = new State(new int[][]{{id}}, 1);
+            return true;
+        }
+        int at = chunkOf(current.chunks, id);
+        int[] chunk = current.chunks[at];
+        int index = Arrays.binarySearch(chunk, id);
+        if (index >= 0)
+            return false;
+        index = -index - 1;
+        int[] added = new int[chunk.length + 1];
+        System.arraycopy(chunk, 0, added, 0, index);
+        added[index] = id;
+        System.arraycopy(chunk, index, added, index + 1, chunk.length - index);
+        int[][] chunks;
+        if (added.length < 2 * CHUNK_SIZE) {
+            chunks = current.chunks.clone();
+            chunks[at] = added;
+        } else {
+            chunks = new int[current.chunks.length + 1][];
+            System.arraycopy(current.chunks, 0, chunks, 0, at);
+            chunks[at] = Arrays.copyOfRange(added, 0, CHUNK_SIZE);
+            chunks[at + 1] = Arrays.copyOfRange(added, CHUNK_SIZE, added.length);
+            System.arraycopy(current.chunks, at + 1, chunks, at + 2, current.chunks.length - at - 1);
+        }
+        state = new State(chunks, current.size + 1);
+        return true;
+    }
+
+    /**
+     * add many ids at once, they are sorted one time instead of being added one by one
+     *
+     * @param ids the ids of the users in any order, the array is not kept
+     */
+    public synchronized void addAll(int[] ids) {
+        if (ids.length == 0)
+            return;
+        int[] all = Arrays.copyOf(ids(), state.size + ids.length);
+        System.arraycopy(ids, 0, all, state.size, ids.length);
+        Arrays.sort(all);
+        int size = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (size == 0 || all[size - 1] != all[i])
+                all[size++] = all[i];
+        }
+        int[][] chunks = new int[(size + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = Arrays.copyOfRange(all, i * CHUNK_SIZE, Math.min(size, (i + 1) * CHUNK_SIZE));
+        }
+        State added = new State(chunks, size);
+        added.flat = size == all.length ? all : Arrays.copyOf(all, size);
+        state = added;
+    }
+
+    /**
+     * Remove boolean.
+     *
+     * @param id the id of the user
+     * @return false if it was not in the set
+     */
+    public synchronized boolean remove(int id) {
+        State current = state;
+        if (current.size == 0)
+            return false;
+        int at = chunkOf(current.chunks, id);
+        int[] chunk = current.chunks[at];
+        int index = Arrays.binarySearch(chunk, id);
+        if (index < 0)
+            return false;
+        int[][] chunks;
+        if (chunk.length == 1) {
+            chunks = new int[current.chunks.length - 1][];
+            System.arraycopy(current.chunks, 0, chunks, 0, at);
+            System.arraycopy(current.chunks, at + 1, chunks, at, chunks.length - at);
+        } else {
+            int[] removed = new int[chunk.length - 1];
+            System.arraycopy(chunk, 0, removed, 0, index);
+            System.arraycopy(chunk, index + 1, removed, index, removed.length - index);
+            chunks = current.chunks.clone();
+            chunks[at] = removed;
+        }
+        state = new State(chunks, current.size - 1);
+        return true;
+    }
+
+    /**
+     * Contains boolean.
+     *
+     * @param id the id of the user
+     * @return true if it is in the set
+     */
+    public boolean contains(int id) {
+        State current = state;
+        if (current.size == 0)
+            return false;
+        return Arrays.binarySearch(current.chunks[chunkOf(current.chunks, id)], id) >= 0;
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the number of users
+     */
+    public int size() {
+        return state.size;
+    }
+
+    /**
+     * the ids at this moment, the array is shared and must not be changed
+     *
+     * @return the sorted ids
+     */
+    public int[] ids() {
+        State current = state;
+        int[] flat = current.flat;
+        if (flat == null) {
+            flat = new int[current.size];
+            int at = 0;
+            for (int[] chunk : current.chunks) {
+                System.arraycopy(chunk, 0, flat, at, chunk.length);
+                at += chunk.length;
+            }
+            current.flat = flat;
+        }
+        return flat;
+    }
+
+    //// the last chunk whose first id is not larger than the id, or the first chunk
+    private static int chunkOf(int[][] chunks, int id) {
+        int low = 0;
+        int high = chunks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks[middle][0] <= id)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * The type State.
+     * the chunks never change once a state is made
+     */
+    private static final class State {
+        private final int[][] chunks;
+        private final int size;
+        //// null until the ids are first read, two readers may make it both and that is harmless
+        private volatile int[] flat;
+
+        private State(int[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+            if (size == 0)
+                flat = new int[0];
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package  org.ce.ap.server.model.user;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import  org.ce.ap.server.exceptions.InvalidAgeException;
 import  org.ce.ap.server.exceptions.InvalidCharacterNumberException;
+import org.ce.ap.protocol.JsonOutput;
+import org.ce.ap.protocol.StreamedJson;
 import org.json.JSONObject;
 
 /**
  * The type User.
  */
 public class User {
+    //// the order toJson's keys are written in
+    private static final String[] JSON_KEYS = JsonOutput.keyOrder("firstName", "lastName", "username", "password",
+            "birthDate", "registryDate", "biography", "followings", "followers");
     private JSONObject jsonObject;
     private String firstName;
     private String lastName;
@@ -20,8 +26,10 @@ public class User {
     private LocalDate birthDate;
     private final LocalDate registryDate;
     private String biography="";
-    private HashSet<User> followings = new HashSet<>();
-    private HashSet<User> followers = new HashSet<>();
+    //// given by UserIds when the user manager keeps the user
+    private int id = -1;
+    private final FollowSet followings = new FollowSet();
+    private final FollowSet followers = new FollowSet();
 
 
     /**
@@ -57,6 +65,47 @@ public class User {
         this.password = jsonObject.getString("password");
         this.birthDate = LocalDate.parse(jsonObject.getString("birthDate"));
         this.registryDate = LocalDate.parse(jsonObject.getString("registryDate"));
+        this.biography = jsonObject.optString("biography", "");
+    }
+
+    /**
+     * Instantiates a new User from a snapshot, the followings are added later.
+     *
+     * @param firstName    the first name
+     * @param lastName     the last name
+     * @param username     the username
+     * @param password     the password hash
+     * @param birthDate    the birth date
+     * @param registryDate the registry date
+     * @param biography    the biography
+     */
+    public User(String firstName, String lastName, String username, String password, LocalDate birthDate,
+                LocalDate registryDate, String biography) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.username = username;
+        this.password = password;
+        this.birthDate = birthDate;
+        this.registryDate = registryDate;
+        this.biography = biography;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the int id of the user in this run of the server
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param id the id UserIds gave the user
+     */
+    void setId(int id) {
+        this.id = id;
     }
 
     /**
@@ -198,10 +247,11 @@ public class User {
      * @param list the list
      * @return the array list
      */
-    public ArrayList<String> toJsonArrayUserStr(HashSet<User> list) {
-        ArrayList<String> jsonList = new ArrayList<>();
-        for (User user : list) {
-            jsonList.add(user.getUsername());
+    public ArrayList<String> toJsonArrayUserStr(FollowSet list) {
+        int[] ids = list.ids();
+        ArrayList<String> jsonList = new ArrayList<>(ids.length);
+        for (int userId : ids) {
+            jsonList.add(UserIds.get(userId).getUsername());
         }
         return jsonList;
     }
@@ -212,10 +262,10 @@ public class User {
      * @param list the list
      * @return the array list
      */
-    public ArrayList<JSONObject> toJsonArrayUser(HashSet<User> list) {
-        System.out.println("LIST= " + list);
+    public ArrayList<JSONObject> toJsonArrayUser(FollowSet list) {
         ArrayList<JSONObject> jsonList = new ArrayList<>();
-        for (User user : list) {
+        for (int userId : list.ids()) {
+            User user = UserIds.get(userId);
             if (user.equals(this))
                 continue;
             jsonList.add((user).toJson());
@@ -234,7 +284,7 @@ public class User {
      * @return the json object
      */
     public JSONObject toJson() {
-        this.jsonObject = new JSONObject();
+        JSONObject jsonObject = new JSONObject();
 
         jsonObject.put("firstName", firstName);
         jsonObject.put("lastName", lastName);
@@ -245,16 +295,95 @@ public class User {
         jsonObject.put("biography", biography);
         jsonObject.put("followings", toJsonArrayUserStr(followings));
         jsonObject.put("followers", toJsonArrayUserStr(followers));
+        this.jsonObject = jsonObject;
         return jsonObject;
     }
 
+    /**
+     * the names of the user without the followings and the followers, for the lists of users
+     *
+     * @return the json object
+     */
+    public JSONObject toSummaryJson() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("username", username);
+        jsonObject.put("firstName", firstName);
+        jsonObject.put("lastName", lastName);
+        return jsonObject;
+    }
+
+    /**
+     * the user as a value that is written straight to the response
+     *
+     * @return the streamed json
+     */
+    public StreamedJson toStreamedJson() {
+        return this::writeJson;
+    }
+
+    /**
+     * write the same text as toJson().toString() without building the json objects,
+     * a null field is left out like JSONObject.put does
+     *
+     * @param out the writer
+     * @throws IOException the io exception
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write('{');
+        boolean comma = false;
+        for (String key : JSON_KEYS) {
+            Object value = field(key);
+            if (value == null)
+                continue;
+            JsonOutput.writeKey(out, comma, key);
+            if (value instanceof FollowSet) {
+                out.write('[');
+                boolean usernameComma = false;
+                for (int userId : ((FollowSet) value).ids()) {
+                    if (usernameComma)
+                        out.write(',');
+                    JSONObject.quote(UserIds.get(userId).getUsername(), out);
+                    usernameComma = true;
+                }
+                out.write(']');
+            } else {
+                JSONObject.quote(value.toString(), out);
+            }
+            comma = true;
+        }
+        out.write('}');
+    }
+
+    private Object field(String key) {
+        switch (key) {
+            case "firstName":
+                return firstName;
+            case "lastName":
+                return lastName;
+            case "username":
+                return username;
+            case "password":
+                return password;
+            case "birthDate":
+                return birthDate;
+            case "registryDate":
+                return registryDate;
+            case "biography":
+                return biography;
+            case "followings":
+                return followings;
+            default:
+                return followers;
+        }
+    }
+
     /**
      * Add follower.
      *
      * @param user the user
      */
     public void addFollower(User user) {
-        followers.add(user);
+        followers.add(user.id);
     }
 
     /**
@@ -263,7 +392,7 @@ public class User {
      * @param user the user
      */
     public void removeFollower(User user) {
-        followers.remove(user);
+        followers.remove(user.id);
     }
 
     /**
@@ -272,7 +401,18 @@ public class User {
      * @param user the user
      */
     public void addFollowing(User user) {
-        followings.add(user);
+        followings.add(user.id);
+    }
+
+    /**
+     * add the followings and the followers read at start, each set is sorted once
+     *
+     * @param followingIds the ids of the followings
+     * @param followerIds  the ids of the followers
+     */
+    public void addFollows(int[] followingIds, int[] followerIds) {
+        followings.addAll(followingIds);
+        followers.addAll(followerIds);
     }
 
     /**
@@ -281,25 +421,71 @@ public class User {
      * @param user the user
      */
     public void removeFollowing(User user) {
-        followings.remove(user);
+        followings.remove(user.id);
     }
 
     /**
      * Gets followings.
      *
-     * @return the followings
+     * @return a new list of the followings
      */
     public ArrayList<User> getFollowings() {
-        return new ArrayList<>(followings);
+        return toUsers(followings.ids());
+    }
+
+    /**
+     * Gets following ids.
+     * the loops over the followings use these to iterate without a copy
+     *
+     * @return the sorted ids of the followings, the array must not be changed
+     */
+    public int[] getFollowingIds() {
+        return followings.ids();
+    }
+
+    /**
+     * Is following boolean.
+     *
+     * @param user the user
+     * @return true if this user follows the given one
+     */
+    public boolean isFollowing(User user) {
+        return followings.contains(user.id);
+    }
+
+    /**
+     * Gets followers count.
+     *
+     * @return the number of followers
+     */
+    public int getFollowersCount() {
+        return followers.size();
     }
 
     /**
      * Gets followers.
      *
-     * @return the followers
+     * @return a new list of the followers
      */
     public ArrayList<User> getFollowers() {
-        return new ArrayList<>(followers);
+        return toUsers(followers.ids());
+    }
+
+    /**
+     * Gets follower ids.
+     *
+     * @return the sorted ids of the followers, the array must not be changed
+     */
+    public int[] getFollowerIds() {
+        return followers.ids();
+    }
+
+    private static ArrayList<User> toUsers(int[] ids) {
+        ArrayList<User> users = new ArrayList<>(ids.length);
+        for (int userId : ids) {
+            users.add(UserIds.get(userId));
+        }
+        return users;
     }
 
     /**
@@ -0,0 +1,54 @@
+package  org.ce.ap.server.model.user;
+
+import java.util.Arrays;
+
+/**
+ * The type User ids.
+ * every user the user manager keeps gets a small int id, the follow graph keeps these ids
+ * instead of references to the users. a user that is only made and thrown away takes no id. an id is known to another thread only after the user was
+ * put where that thread found it, so the array is read without a lock
+ */
+public final class UserIds {
+    private static final Object LOCK = new Object();
+    private static volatile User[] users = new User[1024];
+    private static int next;
+
+    private UserIds() {
+    }
+
+    /**
+     * give the user the next id, the user manager calls it when it keeps the user
+     *
+     * @param user the user
+     */
+    public static void register(User user) {
+        synchronized (LOCK) {
+            if (user.getId() >= 0)
+                throw new IllegalStateException(user.getUsername() + " has an id");
+            if (next == users.length)
+                users = Arrays.copyOf(users, users.length * 2);
+            users[next] = user;
+            user.setId(next++);
+        }
+    }
+
+    /**
+     * forget every id, it is only used before the users are given to anyone
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            Arrays.fill(users, 0, next, null);
+            next = 0;
+        }
+    }
+
+    /**
+     * Get user.
+     *
+     * @param id the id
+     * @return the user of the id
+     */
+    public static User get(int id) {
+        return users[id];
+    }
+}
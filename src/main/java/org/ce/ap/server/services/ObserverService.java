@@ -7,6 +7,14 @@ import  org.ce.ap.server.model.user.User;
  * this interface subscribes or unsubscribes the given user
  */
 public interface ObserverService {
+    /**
+     * Attach a new session of a user to the users it follows.
+     *
+     * @param subscriber     the subscriber
+     * @param subscriberUser the subscriber user
+     */
+    void attach(Subscriber subscriber, User subscriberUser);
+
     /**
      * Subscribe.
      *
@@ -25,4 +33,12 @@ public interface ObserverService {
      */
     void unSubscribe(User user, Subscriber subscriber, User subscriberUser);
 
+    /**
+     * Detach the subscriber of an offline user from the users it follows.
+     *
+     * @param subscriber     the subscriber
+     * @param subscriberUser the subscriber user
+     */
+    void detach(Subscriber subscriber, User subscriberUser);
+
 }
@@ -1,6 +1,7 @@
 package  org.ce.ap.server.services;
 
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.tweet.TweetKey;
 
 import java.util.ArrayList;
 
@@ -19,7 +20,9 @@ public interface TimelineService {
     /**
      * Refresh array list.
      *
+     * @param after the last tweet of the previous page or null for the newest tweets
+     * @param limit the max number of tweets
      * @return a array list of tweets
      */
-    public ArrayList<Tweet> refresh();
+    public ArrayList<Tweet> refresh(TweetKey after, int limit);
 }
@@ -12,6 +12,11 @@ import  org.ce.ap.server.managers.UserManager;
 public class ObserverServiceImpl implements ObserverService {
     private UserManager userManager = UserManager.getInstance();
 
+    @Override
+    public void attach(Subscriber subscriber, User subscriberUser) {
+        SubscribersManager.attach(subscriber, subscriberUser);
+    }
+
     @Override
     public void subscribe(User user, Subscriber subscriber, User subscriberUser) {
         SubscribersManager.subscribe(user, subscriber, subscriberUser);
@@ -30,4 +35,9 @@ public class ObserverServiceImpl implements ObserverService {
             userManager.update(subscriberUser);
         }
     }
+
+    @Override
+    public void detach(Subscriber subscriber, User subscriberUser) {
+        SubscribersManager.detach(subscriber, subscriberUser);
+    }
 }
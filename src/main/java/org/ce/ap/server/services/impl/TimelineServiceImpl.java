@@ -1,20 +1,36 @@
 package  org.ce.ap.server.services.impl;
 
+import  org.ce.ap.server.ServerConfig;
 import  org.ce.ap.server.model.user.User;
+import  org.ce.ap.server.model.user.UserIds;
+import  org.ce.ap.server.services.observer.Publisher;
 import  org.ce.ap.server.services.observer.Subscriber;
 import  org.ce.ap.server.services.TimelineService;
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.tweet.TweetKey;
 import  org.ce.ap.server.managers.TweetManager;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * The type Timeline service.
+ * keeps the keys of the newest tweets of the followings sorted while the user is online, the
+ * publisher pushes every new tweet into it and only the tweets of a page are read. the keys are
+ * taken when the timeline is first read, a follow or an unfollow adds or drops one author's keys.
+ * the tweets of the users with too many followers are not pushed and are merged when the
+ * timeline is read.
  */
 public class TimelineServiceImpl implements TimelineService, Subscriber {
+    private static final int MATERIALIZED_SIZE = Integer.parseInt(ServerConfig.getProperty("server.timeline.materialized-size"));
     private User user;
-    private ArrayList<Tweet> tweets = new ArrayList<>();
+    //// the newest tweets and their authors, at most MATERIALIZED_SIZE of them
+    private final TreeMap<TweetKey, User> keys = new TreeMap<>();
+    //// false until the first read, the pushes before it are already in the tweets it takes
+    private boolean seeded;
+    //// true if older tweets than the last kept one may exist
+    private boolean truncated;
     /**
      * The Tweet manager.
      */
@@ -27,47 +43,91 @@ public class TimelineServiceImpl implements TimelineService, Subscriber {
         this.user=user;
     }
 
-    /**
-     * Add tweets from file.
-     *
-     * @param tweets the tweets
-     */
-    public void addTweetsFromFile(ArrayList<Tweet> tweets) {
-        this.tweets = tweets;
+    private void seed() {
+        for (int followingId : user.getFollowingIds()) {
+            merge(UserIds.get(followingId));
+        }
+        seeded = true;
     }
 
     /**
-     * this class sorts Tweets by time
+     * add the newest keys of an author, it stops at the first one older than the kept keys
+     *
+     * @param author the author
      */
-    private void sortTweetsByTime() {
-        tweets.sort(new dateSorter());
+    private void merge(User author) {
+        for (TweetKey key : tweetManager.findKeysByAuthor(author)) {
+            if (keys.size() == MATERIALIZED_SIZE && key.compareTo(keys.lastKey()) > 0) {
+                truncated = true;
+                return;
+            }
+            keys.put(key, author);
+            if (keys.size() > MATERIALIZED_SIZE) {
+                keys.pollLastEntry();
+                truncated = true;
+            }
+        }
     }
 
     @Override
-    public void update(Tweet tweet, Boolean state) {
-        if (state) {
-            tweets = tweetManager.addToUserToTweets(tweet);
-        } else {
-            tweets = tweetManager.removeFromUserToTweets(tweet);
-        }
-        sortTweetsByTime();
+    public synchronized void followed(User author) {
+        if (seeded)
+            merge(author);
     }
 
     @Override
-    public ArrayList<Tweet> refresh() {
-        tweets= tweetManager.getTimeline(user);
-        sortTweetsByTime();
-        return tweets;
+    public synchronized void unfollowed(User author) {
+        keys.values().removeIf(author::equals);
     }
 
-}
+    @Override
+    public synchronized void update(Tweet tweet, Boolean state) {
+        if (!seeded)
+            return;
+        if (!state) {
+            keys.remove(tweet.getKey());
+            return;
+        }
+        keys.put(tweet.getKey(), tweet.getAuthor());
+        if (keys.size() > MATERIALIZED_SIZE) {
+            keys.pollLastEntry();
+            truncated = true;
+        }
+    }
 
-/**
- * this class can help us to sort the arraylist by date!
- */
-class dateSorter implements Comparator<Tweet> {
     @Override
-    public int compare(Tweet o1, Tweet o2) {
-        return o2.getSendDate().compareTo(o1.getSendDate());
+    public synchronized ArrayList<Tweet> refresh(TweetKey after, int limit) {
+        if (!seeded)
+            seed();
+        TreeMap<TweetKey, Tweet> page = new TreeMap<>();
+        SortedMap<TweetKey, User> rest = after == null ? keys : keys.tailMap(after, false);
+        int taken = 0;
+        for (TweetKey key : rest.keySet()) {
+            if (taken == limit)
+                break;
+            taken++;
+            Tweet tweet = tweetManager.findTweet(key.getId());
+            if (tweet != null)
+                page.put(key, tweet);
+        }
+        //// the page goes past the kept tweets
+        if (taken < limit && truncated)
+            return tweetManager.getTimeline(user, after, limit);
+        for (int followingId : user.getFollowingIds()) {
+            User following = UserIds.get(followingId);
+            if (!Publisher.isFanOutOnRead(following))
+                continue;
+            for (Tweet tweet : tweetManager.findTweetsByAuthor(following, after, limit)) {
+                page.put(tweet.getKey(), tweet);
+            }
+        }
+        ArrayList<Tweet> tweetArrayList = new ArrayList<>(Math.min(limit, page.size()));
+        for (Tweet tweet : page.values()) {
+            if (tweetArrayList.size() == limit)
+                break;
+            tweetArrayList.add(tweet);
+        }
+        return tweetArrayList;
     }
-}
\ No newline at end of file
+
+}
@@ -9,6 +9,7 @@ import  org.ce.ap.server.services.TweetingService;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.concurrent.locks.Lock;
 
 /**
  * The type Tweeting service.
@@ -61,9 +62,14 @@ public class TweetingServiceImpl implements TweetingService {
      */
     @Override
     public void like(Tweet tweet, User user) {
-        tweetManager.findTweet(tweet.getId()).likeTweet(user);
-        tweetManager.update(tweet, true);
-//        tweetManager.updateLike(tweet);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweetManager.findTweet(tweet.getId()).likeTweet(user);
+            tweetManager.updateLike(tweet, user, true);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -74,9 +80,14 @@ public class TweetingServiceImpl implements TweetingService {
      */
     @Override
     public void unLike(Tweet tweet, User user) {
-        tweetManager.findTweet(tweet.getId()).removeLike(user);
-        tweetManager.update(tweet, true);
-//        tweetManager.updateLike(tweet);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweetManager.findTweet(tweet.getId()).removeLike(user);
+            tweetManager.updateLike(tweet, user, false);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -87,8 +98,14 @@ public class TweetingServiceImpl implements TweetingService {
      */
     @Override
     public void reply(Tweet tweet, Tweet replyTweet) {
-        tweet.addNewReply(replyTweet);
-        tweetManager.update(tweet, true);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweet.addNewReply(replyTweet);
+            tweetManager.updateReply(tweet, replyTweet, true);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -97,8 +114,14 @@ public class TweetingServiceImpl implements TweetingService {
      */
     @Override
     public void removeReply(Tweet tweet, Tweet replyTweet) {
-        tweet.removeReply(replyTweet);
-        tweetManager.update(tweet, true);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweet.removeReply(replyTweet);
+            tweetManager.updateReply(tweet, replyTweet, false);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -113,8 +136,14 @@ public class TweetingServiceImpl implements TweetingService {
     public Retweet retweet(Tweet tweet, User user, String text) throws InvalidCharacterNumberException {
         Retweet retweet = new Retweet(tweet, user, text, tweetManager.makeID());
         tweetManager.addNewTweet(retweet);
-        tweet.addRetweet(retweet);
-        tweetManager.update(tweet, true);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweet.addRetweet(retweet);
+            tweetManager.updateRetweet(tweet, retweet, true);
+        } finally {
+            lock.unlock();
+        }
         System.out.println(retweet);
         return retweet;
     }
@@ -127,11 +156,15 @@ public class TweetingServiceImpl implements TweetingService {
      */
     @Override
     public void removeRetweet(Tweet tweet, User user, Retweet retweet) {
-        tweet.removeRetweet(retweet);
+        Lock lock = tweetManager.lockOf(tweet);
+        lock.lock();
+        try {
+            tweet.removeRetweet(retweet);
+            tweetManager.updateRetweet(tweet, retweet, false);
+        } finally {
+            lock.unlock();
+        }
         tweetManager.removeTweet(retweet, user);
-        System.out.println(tweet.toJson());
-        tweetManager.update(tweet, true);
-//        tweetManager.update(retweet, false);
     }
 
     /**
@@ -1,5 +1,6 @@
 package  org.ce.ap.server.services.observer;
 
+import  org.ce.ap.server.ServerConfig;
 import  org.ce.ap.server.model.tweet.Tweet;
 import  org.ce.ap.server.model.user.User;
 
@@ -9,18 +10,33 @@ import java.util.HashSet;
  * this class notifies all users by update them
  */
 public class Publisher {
+    private static final int MAX_FAN_OUT = Integer.parseInt(ServerConfig.getProperty("server.fanout.max-followers"));
+
     /**
      * Notify.
+     * the new tweets of the users with too many followers are not pushed, their
+     * followers read them when they load the timeline
      *
      * @param tweet is using for update subscribers
      * @param state is a boolean
      */
     public void notify(Tweet tweet, Boolean state) {
         User user = tweet.getAuthor();
-        HashSet<Subscriber> subscribers = new HashSet<>(SubscribersManager.subscribers.get(user).values());
+        if (state && isFanOutOnRead(user))
+            return;
+        HashSet<Subscriber> subscribers = new HashSet<>(SubscribersManager.subscribers.get(user));
         for (Subscriber subscriber : subscribers) {
-            System.out.println(subscribers.size());
             subscriber.update(tweet, state);
         }
     }
+
+    /**
+     * Is fan out on read boolean.
+     *
+     * @param author the author
+     * @return true if the tweets of the author are merged at read time instead of pushed
+     */
+    public static boolean isFanOutOnRead(User author) {
+        return author.getFollowersCount() > MAX_FAN_OUT;
+    }
 }
@@ -1,6 +1,7 @@
 package  org.ce.ap.server.services.observer;
 
 import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.user.User;
 
 /**
  * this interface update tweets
@@ -13,4 +14,20 @@ public interface Subscriber {
      * @param state the state
      */
     void update(Tweet tweet, Boolean state);
+
+    /**
+     * the subscriber's user followed a user, it gets the user's new tweets from now on
+     *
+     * @param user the followed user
+     */
+    default void followed(User user) {
+    }
+
+    /**
+     * the subscriber's user unfollowed a user
+     *
+     * @param user the unfollowed user
+     */
+    default void unfollowed(User user) {
+    }
 }
@@ -1,19 +1,26 @@
 package  org.ce.ap.server.services.observer;
 
 import  org.ce.ap.server.model.user.User;
+import  org.ce.ap.server.model.user.UserIds;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The type Subscribers manager.
+ * a subscriber is one session of a user, a user signed in twice has two of them and a
+ * follow or an unfollow in one session changes the subscriptions of all of them
  */
 public class SubscribersManager {
 
     /**
      * The constant subscribers.
+     * the live sessions that get the new tweets of each user
      */
-    public static HashMap<User, HashMap<User, Subscriber>> subscribers = new HashMap<>();
+    public static ConcurrentHashMap<User, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    //// the live sessions of each user, the changes of a user's subscriptions are made under its set
+    private static final ConcurrentHashMap<User, Set<Subscriber>> sessions = new ConcurrentHashMap<>();
 
 
     /**
@@ -23,24 +30,48 @@ public class SubscribersManager {
      */
     public SubscribersManager(ArrayList<User> users) {
         for (User user : users) {
-            subscribers.put(user, new HashMap<>());
+            subscribers.put(user, ConcurrentHashMap.newKeySet());
         }
 
     }
 
+    private static Set<Subscriber> sessionsOf(User user) {
+        return sessions.computeIfAbsent(user, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Attach a new session of a user to the users it follows.
+     *
+     * @param subscriber     the session
+     * @param subscriberUser the subscriber user
+     */
+    public static void attach(Subscriber subscriber, User subscriberUser) {
+        Set<Subscriber> live = sessionsOf(subscriberUser);
+        synchronized (live) {
+            live.add(subscriber);
+            for (int followingId : subscriberUser.getFollowingIds()) {
+                subscribers.get(UserIds.get(followingId)).add(subscriber);
+            }
+        }
+    }
+
     /**
      * Subscribe.
      *
      * @param user           is using for adding subscriber
-     * @param subscriber     is the user that should follow the given user
+     * @param subscriber     the session that asked, every live session of the subscriber user follows the given user
      * @param subscriberUser the subscriber user
      */
     public static void subscribe(User user, Subscriber subscriber, User subscriberUser) {
-        HashMap<User, Subscriber> subscriberList = subscribers.get(user);
-        subscriberList.put(subscriberUser, subscriber);
-        subscribers.put(user, subscriberList);
-        user.addFollower(subscriberUser);
-        subscriberUser.addFollowing(user);
+        Set<Subscriber> live = sessionsOf(subscriberUser);
+        synchronized (live) {
+            user.addFollower(subscriberUser);
+            subscriberUser.addFollowing(user);
+            for (Subscriber session : live) {
+                subscribers.get(user).add(session);
+                session.followed(user);
+            }
+        }
 
     }
 
@@ -48,28 +79,51 @@ public class SubscribersManager {
      * Un subscribe.
      *
      * @param user           is using for adding subscriber
-     * @param subscriber     is the user that should unfollow the given user
+     * @param subscriber     the session that asked, every live session of the subscriber user unfollows the given user
      * @param subscriberUser the subscriber user
      */
     public static void unSubscribe(User user, Subscriber subscriber, User subscriberUser) {
         if (user.equals(subscriberUser))
             return;
-        HashMap<User, Subscriber> subscriberList = subscribers.get(user);
-        subscriberList.remove(subscriberUser);
-        subscribers.put(user, subscriberList);
-        user.removeFollower(subscriberUser);
-        subscriberUser.removeFollowing(user);
+        Set<Subscriber> live = sessionsOf(subscriberUser);
+        synchronized (live) {
+            user.removeFollower(subscriberUser);
+            subscriberUser.removeFollowing(user);
+            for (Subscriber session : live) {
+                subscribers.get(user).remove(session);
+                session.unfollowed(user);
+            }
+        }
         System.out.println("user" + user.toJson());
         System.out.println("subscriberUser" + subscriberUser.toJson());
     }
 
+    /**
+     * Detach a session from the users it follows without unfollowing them.
+     * the other sessions of the same user are not touched
+     *
+     * @param subscriber     the subscriber
+     * @param subscriberUser the subscriber user
+     */
+    public static void detach(Subscriber subscriber, User subscriberUser) {
+        Set<Subscriber> live = sessionsOf(subscriberUser);
+        synchronized (live) {
+            live.remove(subscriber);
+            for (int followingId : subscriberUser.getFollowingIds()) {
+                Set<Subscriber> subscriberList = subscribers.get(UserIds.get(followingId));
+                if (subscriberList != null)
+                    subscriberList.remove(subscriber);
+            }
+        }
+    }
+
     /**
      * Add new user.
      *
      * @param user is using for adding to the hashset
      */
     public static void addNewUser(User user) {
-        subscribers.put(user, new HashMap<>());
+        subscribers.putIfAbsent(user, ConcurrentHashMap.newKeySet());
     }
 
 
@@ -0,0 +1,160 @@
+package  org.ce.ap.server.middleClasses;
+
+import  org.ce.ap.server.DataBase.TweetDataBase;
+import  org.ce.ap.server.DataBase.UserDataBase;
+import  org.ce.ap.server.managers.TweetManager;
+import  org.ce.ap.server.managers.UserManager;
+import  org.ce.ap.server.model.tweet.Tweet;
+import  org.ce.ap.server.model.user.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Server processor concurrency test.
+ * many clients, each with its own processor like a connection, like, reply to, retweet the same
+ * tweet and follow its author at once. no change may be lost in memory or in the files
+ */
+public class ServerProcessorConcurrencyTest {
+    private static final int CLIENTS = 32;
+    private static final int REPLIES = 5;
+    private static final String AUTHOR = "author1";
+
+    /**
+     * run the server on a configuration whose files are in a new directory, it must be set
+     * before the server reads its configuration
+     *
+     * @throws Exception the exception
+     */
+    @BeforeClass
+    public static void useTemporaryFiles() throws Exception {
+        Path directory = Files.createTempDirectory("twitter-test-");
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(Path.of("src/main/resources/server-application.properties"))) {
+            properties.load(in);
+        }
+        properties.setProperty("server.users.file", directory.resolve("users").toString());
+        properties.setProperty("server.tweets.file", directory.resolve("tweets").toString());
+        properties.setProperty("server.log.file", directory.resolve("log").toString());
+        properties.setProperty("server.snapshot.file", directory.resolve("snapshot").toString());
+        for (String name : new String[]{"users", "tweets", "log", "snapshot"}) {
+            Files.createDirectories(directory.resolve(name));
+        }
+        Path config = directory.resolve("server-application.properties");
+        try (OutputStream out = Files.newOutputStream(config)) {
+            properties.store(out, "concurrency test");
+        }
+        System.setProperty("server.config", config.toAbsolutePath().toString());
+    }
+
+    private static JSONObject request(ServerProcessor processor, String method, JSONObject parameters) {
+        JSONObject request = new JSONObject();
+        request.put("method", method);
+        request.put("parameterValues", parameters);
+        JSONObject response = processor.processRequest(request);
+        assertFalse(method + " failed : " + response, response.getBoolean("hasError"));
+        return response;
+    }
+
+    private static ServerProcessor signUp(String username) {
+        ServerProcessor processor = new ServerProcessor();
+        JSONObject parameters = new JSONObject();
+        parameters.put("firstName", "Test");
+        parameters.put("lastName", "Client");
+        parameters.put("username", username);
+        parameters.put("password", "password");
+        parameters.put("birthDate", "2000-01-01");
+        request(processor, "SIGNUP", parameters);
+        return processor;
+    }
+
+    private static String client(int index) {
+        return "client" + index;
+    }
+
+    /**
+     * Concurrent likes, replies, retweets and follows are all kept.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void concurrentLikesRepliesRetweetsAndFollows() throws Exception {
+        ServerProcessor author = signUp(AUTHOR);
+        JSONObject text = new JSONObject();
+        text.put("text", "the tweet everyone answers");
+        request(author, "TWEET", text);
+        //// the result of a response is written as it is sent, the tweet is taken from the manager
+        long id = TweetManager.getInstance().findTweetsByAuthor(UserManager.getInstance().findUser(AUTHOR), null, 1).get(0).getId();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            String username = client(i);
+            done.add(clients.submit(() -> {
+                ServerProcessor processor = signUp(username);
+                JSONObject tweet = new JSONObject().put("id", id);
+                start.await();
+                request(processor, "LIKE", new JSONObject().put("tweet", tweet));
+                for (int reply = 0; reply < REPLIES; reply++) {
+                    request(processor, "REPLY", new JSONObject().put("tweet", tweet).put("text", username + " reply " + reply));
+                }
+                request(processor, "RETWEET", new JSONObject().put("tweet", tweet).put("text", username + " retweet"));
+                request(processor, "FOLLOW", new JSONObject().put("user", new JSONObject().put("username", AUTHOR)));
+                processor.close();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> client : done) {
+            client.get(1, TimeUnit.MINUTES);
+        }
+        clients.shutdown();
+
+        Tweet tweet = TweetManager.getInstance().findTweet(id);
+        assertEquals(CLIENTS, tweet.getLikeNumber());
+        assertEquals(CLIENTS * REPLIES, tweet.getReplies().size());
+        assertEquals(CLIENTS, tweet.getRetweetNumber());
+        User authorUser = UserManager.getInstance().findUser(AUTHOR);
+        HashSet<String> followers = new HashSet<>();
+        for (User follower : authorUser.getFollowers()) {
+            followers.add(follower.getUsername());
+        }
+        for (int i = 0; i < CLIENTS; i++) {
+            assertTrue(client(i) + " does not follow", followers.contains(client(i)));
+            assertTrue(UserManager.getInstance().findUser(client(i)).isFollowing(authorUser));
+        }
+        //// the author follows itself
+        assertEquals(CLIENTS + 1, followers.size());
+
+        //// a second reader of the files sees the same tweet and followers
+        TweetDataBase tweets = TweetDataBase.create();
+        tweets.readIndex();
+        JSONObject stored = tweets.read(id);
+        assertEquals(CLIENTS, stored.getJSONArray("likes").length());
+        assertEquals(CLIENTS * REPLIES, stored.getJSONArray("replies").length());
+        assertEquals(CLIENTS, stored.getJSONArray("retweets").length());
+        JSONArray storedFollowers = new UserDataBase().readFile(AUTHOR).getJSONArray("followers");
+        assertEquals(CLIENTS + 1, storedFollowers.length());
+        author.close();
+    }
+}